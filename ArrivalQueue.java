@@ -0,0 +1,105 @@
+/**
+ * The pending arrivals of a simulation: its ArrivalSources, in a binary heap
+ * ordered by the time of each source's next arrival.  Finding the next
+ * arrival is constant time, and each arrival takes O(log n) time in the
+ * number of sources, however many SimThreads they will create.
+ */
+
+import java.util.Arrays;
+
+public class ArrivalQueue {
+
+    private ArrivalSource[] heap;   // Sources by next arrival time.
+    private long[] ticks;           // Next arrival time of each source in the heap.
+    private int size;               // Number of sources in the heap.
+
+    /**
+     * Constructor.
+     */
+    public ArrivalQueue()
+    {
+        heap = new ArrivalSource[4];
+        ticks = new long[4];
+        size = 0;
+    }
+
+    /**
+     * @return Number of sources with arrivals still to come.
+     */
+    public int size() { return size; }
+
+    /**
+     * @return true if no more SimThreads are to arrive.
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * @return Time of the next arrival, or Long.MAX_VALUE if there is none.
+     */
+    public long nextTick()
+    {
+        return size == 0 ? Long.MAX_VALUE : ticks[0];
+    }
+
+    /**
+     * Adds a source (unless it has no arrivals left).
+     * @param src The source.
+     */
+    public void add(ArrivalSource src)
+    {
+        long tick = src.nextArrival();
+        if (tick == Long.MAX_VALUE) {
+            return;
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+            ticks = Arrays.copyOf(ticks, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (ticks[parent] <= tick) {
+                break;
+            }
+            heap[i] = heap[parent];
+            ticks[i] = ticks[parent];
+            i = parent;
+        }
+        heap[i] = src;
+        ticks[i] = tick;
+    }
+
+    /**
+     * Removes the source whose arrival is next.
+     * @return The source, or null if there is none.
+     */
+    public ArrivalSource poll()
+    {
+        if (size == 0) {
+            return null;
+        }
+        ArrivalSource first = heap[0];
+        ArrivalSource last = heap[--size];
+        long tick = ticks[size];
+        heap[size] = null;
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && ticks[child + 1] < ticks[child]) {
+                child++;
+            }
+            if (ticks[child] >= tick) {
+                break;
+            }
+            heap[i] = heap[child];
+            ticks[i] = ticks[child];
+            i = child;
+        }
+        if (size > 0) {
+            heap[i] = last;
+            ticks[i] = tick;
+        }
+        return first;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Something that creates SimThreads at given simulated times: a workload
+ * trace, a random arrival process, or a single SimThread scheduled for
+ * later.  The OS keeps its sources in an ArrivalQueue, and the engine
+ * treats the next arrival as an event like any other.
+ */
+public interface ArrivalSource {
+
+    /**
+     * @return Time at which the next SimThread arrives, or Long.MAX_VALUE if no more will.
+     */
+    long nextArrival();
+
+    /**
+     * Creates the SimThread that arrives at nextArrival() (with the OS's
+     * createSimThread methods), and moves on to the next one.
+     * @param os Reference to the simulation's OS object.
+     * @throws java.io.IOException if the next arrival cannot be read.
+     */
+    void arrive(OS os) throws java.io.IOException;
+}
@@ -0,0 +1,262 @@
+/**
+ * Benchmarks of the scheduler's hot paths, to get a baseline before
+ * changing a scheduling policy or the engine.  Each benchmark is run for
+ * every combination of policy, priority distribution and number of
+ * SimThreads, with a few warm-up iterations (to let the JIT compile the
+ * code) before the measured ones.  Besides time per operation, the
+ * benchmark reports the bytes allocated per operation by the benchmark
+ * thread, from the JVM's per-thread allocation counter.
+ *
+ *   enqueue   - create and enqueue a SimThread (SchedulingPolicy.enqueue, code 0)
+ *   interrupt - time quantum expiry: enqueue the Running SimThread (code 2)
+ *               and schedule the next one (SchedulingPolicy.scheduleThread)
+ *   run       - the whole headless tick loop, per dispatch, until every SimThread is done
+ *
+ * Usage: java Benchmark [-bench NAME]... [-policy KIND]... [-dist NAME]...
+ *                       [-threads n,n,...] [-warmup n] [-iterations n] [-out file]
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class Benchmark {
+
+    /**
+     * The benchmarks.
+     */
+    public static enum Bench { ENQUEUE, INTERRUPT, RUN }
+
+    /**
+     * How the priorities of the SimThreads are chosen.
+     */
+    public static enum Dist {
+        SAME,       // Every SimThread has priority 0.
+        UNIFORM,    // Priorities spread evenly over the levels.
+        SKEWED;     // Most SimThreads at priority 0, a few at each higher level.
+
+        int priority(Random rand) {
+            switch(this) {
+            case SAME: return 0;
+            case UNIFORM: return rand.nextInt(Scheduler.LEVELS);
+            default: return Math.min(Integer.numberOfTrailingZeros(rand.nextInt() | 1 << 30) / 2, Scheduler.LEVELS - 1);
+            }
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private List<Bench> benches;
+    private List<SchedulingPolicy.Kind> policies;
+    private List<Dist> dists;
+    private int[] threadCounts;
+    private int warmup;
+    private int iterations;
+    private long sink;                  // Keeps the JIT from dropping work whose result isn't used.
+
+    /**
+     * Constructor.  Empty lists mean every benchmark, policy and distribution.
+     */
+    public Benchmark()
+    {
+        benches = new ArrayList<Bench>();
+        policies = new ArrayList<SchedulingPolicy.Kind>();
+        dists = new ArrayList<Dist>();
+        threadCounts = new int[] {10, 1000, 100000};
+        warmup = 2;
+        iterations = 5;
+    }
+
+    /**
+     * Runs every benchmark configuration and prints its result as it finishes.
+     * @return One result per configuration.
+     */
+    public List<Result> run()
+    {
+        List<Result> results = new ArrayList<Result>();
+        for (Bench bench : orAll(benches, Bench.values())) {
+            for (SchedulingPolicy.Kind policy : orAll(policies, SchedulingPolicy.Kind.values())) {
+                for (Dist dist : orAll(dists, Dist.values())) {
+                    for (int n : threadCounts) {
+                        for (int i=0; i<warmup; i++) {
+                            measure(bench, policy, dist, n, i);
+                        }
+                        Result best = null;
+                        for (int i=0; i<iterations; i++) {
+                            Result r = measure(bench, policy, dist, n, warmup + i);
+                            if (best == null || r.nsPerOp < best.nsPerOp) {
+                                best = r;
+                            }
+                        }
+                        System.out.println(best);
+                        results.add(best);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Runs one iteration of a benchmark.
+    private Result measure(Bench bench, SchedulingPolicy.Kind policy, Dist dist, int n, long seed)
+    {
+        OS os = new OS(new SimAdapter(), policy);
+        os.setSeed(seed);
+        Random rand = new Random(seed);
+        int[] priorities = new int[n];
+        for (int i=0; i<n; i++) {
+            priorities[i] = dist.priority(rand);
+        }
+        long ops;
+        long bytes;
+        long start;
+        long time;
+        if (bench == Bench.ENQUEUE) {
+            bytes = THREADS.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int i=0; i<n; i++) {
+                os.createSimThread(priorities[i]);
+            }
+            time = System.nanoTime() - start;
+            bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+            ops = n;
+        } else {
+            for (int i=0; i<n; i++) {
+                os.createSimThread(priorities[i]);
+            }
+            if (bench == Bench.INTERRUPT) {
+                Core core = os.getCores()[0];
+                ops = Math.max(n, 100000);
+                bytes = THREADS.getCurrentThreadAllocatedBytes();
+                start = System.nanoTime();
+                for (long i=0; i<ops; i++) {
+                    os.interrupt(core);
+                }
+                time = System.nanoTime() - start;
+                bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+            } else {
+                long before = os.getMetrics().getContextSwitches();
+                bytes = THREADS.getCurrentThreadAllocatedBytes();
+                start = System.nanoTime();
+                sink += os.run(Long.MAX_VALUE);
+                time = System.nanoTime() - start;
+                bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+                ops = Math.max(os.getMetrics().getContextSwitches() - before, 1);
+            }
+        }
+        sink += os.getThreadList().size();
+        return new Result(bench, policy, dist, n, (double) time / ops, (double) bytes / ops);
+    }
+
+    private static <T> List<T> orAll(List<T> chosen, T[] all)
+    {
+        if (!chosen.isEmpty()) {
+            return chosen;
+        }
+        List<T> list = new ArrayList<T>();
+        for (T t : all) {
+            list.add(t);
+        }
+        return list;
+    }
+
+    /**
+     * The best (fastest) iteration of one benchmark configuration.
+     */
+    public static class Result {
+        public final Bench bench;
+        public final SchedulingPolicy.Kind policy;
+        public final Dist dist;
+        public final int threads;
+        public final double nsPerOp;
+        public final double bytesPerOp;
+
+        Result(Bench bench, SchedulingPolicy.Kind policy, Dist dist, int threads, double nsPerOp, double bytesPerOp) {
+            this.bench = bench;
+            this.policy = policy;
+            this.dist = dist;
+            this.threads = threads;
+            this.nsPerOp = nsPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        /**
+         * @return The result as a line of CSV (bench,policy,dist,threads,ns_per_op,bytes_per_op).
+         */
+        public String toCSV() {
+            return String.format(Locale.ROOT, "%s,%s,%s,%d,%.1f,%.1f",
+                bench, policy, dist, threads, nsPerOp, bytesPerOp);
+        }
+
+        public String toString() {
+            return String.format(Locale.ROOT, "%-9s %-5s %-7s %8d threads %10.1f ns/op %8.1f B/op",
+                bench, policy, dist, threads, nsPerOp, bytesPerOp);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            System.err.println("This JVM can't count allocated bytes; B/op will be 0.");
+        } else {
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+        }
+        Benchmark b = new Benchmark();
+        String out = null;
+        for (int i=0; i<args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            String value = args[++i];
+            if (arg.equals("-bench")) {
+                b.benches.add(Bench.valueOf(value.toUpperCase()));
+            } else if (arg.equals("-policy")) {
+                b.policies.add(SchedulingPolicy.Kind.valueOf(value.toUpperCase()));
+            } else if (arg.equals("-dist")) {
+                b.dists.add(Dist.valueOf(value.toUpperCase()));
+            } else if (arg.equals("-threads")) {
+                String[] parts = value.split(",");
+                b.threadCounts = new int[parts.length];
+                for (int j=0; j<parts.length; j++) {
+                    b.threadCounts[j] = Integer.parseInt(parts[j].trim());
+                }
+            } else if (arg.equals("-warmup")) {
+                b.warmup = Integer.parseInt(value);
+            } else if (arg.equals("-iterations")) {
+                b.iterations = Math.max(1, Integer.parseInt(value));
+            } else if (arg.equals("-out")) {
+                out = value;
+            } else {
+                usage();
+            }
+        }
+        List<Result> results = b.run();
+        if (out != null) {
+            PrintWriter w = new PrintWriter(out, "UTF-8");
+            w.println("bench,policy,dist,threads,ns_per_op,bytes_per_op");
+            for (Result r : results) {
+                w.println(r.toCSV());
+            }
+            w.close();
+            if (w.checkError()) {
+                throw new IOException("Error writing " + out);
+            }
+        }
+        if (b.sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void usage()
+    {
+        System.err.println("Usage: java Benchmark [-bench NAME]... [-policy KIND]... [-dist NAME]...");
+        System.err.println("                      [-threads n,n,...] [-warmup n] [-iterations n] [-out file]");
+        System.exit(1);
+    }
+}
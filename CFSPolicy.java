@@ -0,0 +1,203 @@
+/**
+ * Completely Fair Scheduler, after the Linux scheduler of the same name.
+ *
+ * Each SimThread has a virtual runtime: the time it has run, scaled down by
+ * a weight that grows by 25% per priority level, so higher-priority threads
+ * age more slowly.  The SimThread with the smallest virtual runtime runs
+ * next.  The ready queue is a heap ordered by virtual runtime (then ID),
+ * so enqueue and scheduleThread take O(log n) time and allocate nothing
+ * once the heap is big enough.  Another core steals the thread with the
+ * largest virtual runtime.
+ *
+ * The time quantum is the target latency shared among the runnable threads
+ * (but never less than MIN_GRANULARITY).  A thread that wakes up starts no
+ * further back than the smallest virtual runtime, and preempts the Running
+ * thread if it is far enough behind it.
+ *
+ * Each core has its own CFSPolicy, whose virtual clock (its smallest virtual
+ * runtime) runs at its own pace.  A SimThread carries its virtual runtime
+ * and the policy whose clock it is on.  When another core (or a new policy)
+ * takes it over, it keeps its lead over the smallest virtual runtime, as
+ * Linux does when it migrates a task, so it neither starts over nor jumps
+ * ahead of the threads already there.
+ */
+
+import java.util.Comparator;
+
+public class CFSPolicy implements SchedulingPolicy
+{
+    public static final int LATENCY = 24;           // Time in which every runnable thread should run once
+    public static final int MIN_GRANULARITY = 3;    // Shortest time quantum
+    private static final long SCALE = 1024;         // Virtual runtime units per time unit at priority 0
+
+    private ThreadHeap readyQ;          // SimThreads by virtual runtime
+    private long minVruntime;           // Smallest virtual runtime (never decreases)
+    private SimThread current;          // SimThread this policy last put in the Running state
+    private long dispatched;            // Time up to which current has been charged
+    private OS os;                      // Reference to the "OS"
+
+    /**
+     * Constructor.
+     * @param os A reference to the simulation's OS object.
+     */
+    public CFSPolicy(OS os)
+    {
+        this.os = os;
+        minVruntime = 0;
+        readyQ = new ThreadHeap(new Comparator<SimThread>() {
+            public int compare(SimThread a, SimThread b) {
+                if (a.vruntime != b.vruntime) {
+                    return a.vruntime < b.vruntime ? -1 : 1;
+                }
+                return Integer.compare(a.getID(), b.getID());
+            }
+        });
+        os.setPreempt(true);
+        os.setQuantum(LATENCY);
+        charge();                       // Takes over the Running SimThread, if any.
+    }
+
+    /**
+     * Returns a SimThread's virtual runtime on this policy's clock.
+     * @param st A SimThread.
+     * @return Its virtual runtime (in 1/1024ths of a time unit at priority 0).
+     */
+    public long getVruntime(SimThread st)
+    {
+        return st.cfs == this ? st.vruntime : minVruntime + lead(st);
+    }
+
+    /**
+     * Returns how far a SimThread's virtual runtime is ahead of the smallest
+     * virtual runtime on the clock it is on (negative if behind).
+     * @param st A SimThread.
+     * @return Its lead (its whole virtual runtime if it has never been on a clock).
+     */
+    static long lead(SimThread st)
+    {
+        return st.cfs == null ? st.vruntime : st.vruntime - st.cfs.minVruntime;
+    }
+
+    // Moves a SimThread's virtual runtime onto this policy's clock.
+    private void adopt(SimThread st)
+    {
+        st.vruntime = getVruntime(st);
+        st.cfs = this;
+    }
+
+    public void enqueue(SimThread st, int code)
+    {
+        charge();
+        adopt(st);
+        if (code == 2 || code == 3) {               // Used up its slice, or was preempted
+            readyQ.add(st);
+            current = null;
+            return;
+        }
+        st.vruntime = Math.max(st.vruntime, minVruntime);
+        SimThread running = os.getRunning();
+        if (running == null) {
+            dispatch(st);
+        } else if (st.vruntime + MIN_GRANULARITY * SCALE < getVruntime(running)) {
+            os.preemptRunningThread(st);            // Running thread comes back with code 3.
+            current = st;
+            setSlice();
+        } else {
+            readyQ.add(st);
+        }
+    }
+
+    public void scheduleThread()
+    {
+        charge();
+        dispatch(readyQ.poll());
+    }
+
+    // Puts a SimThread (or nobody) in the Running state.
+    private void dispatch(SimThread st)
+    {
+        os.setRunning(st);
+        current = st;
+        if (st != null) {
+            setSlice();
+        }
+    }
+
+    // Shares the target latency among the runnable threads.
+    private void setSlice()
+    {
+        os.setQuantum(Math.max(MIN_GRANULARITY, LATENCY / (readyQ.size() + 1)));
+    }
+
+    /*
+     * Adds the time since it was last charged to the current thread's virtual
+     * runtime.  A thread left Running by another policy (after OS.setPolicy,
+     * or a restore under another policy) becomes the current thread, to be
+     * charged from now on.
+     */
+    private void charge()
+    {
+        long now = os.getTime();
+        if (current != null) {
+            double weight = Math.pow(1.25, current.getPriority());
+            current.vruntime += (long) ((now - dispatched) * SCALE / weight);
+            long min = current.vruntime;
+            if (readyQ.size() > 0) {
+                min = Math.min(min, readyQ.at(0).vruntime);
+            }
+            minVruntime = Math.max(minVruntime, min);
+        } else {
+            SimThread running = os.getRunning();
+            if (running != null && running.getState() == SimThread.State.RUNNING) {
+                adopt(running);
+                current = running;
+            }
+        }
+        dispatched = now;
+    }
+
+    public int size()
+    {
+        return readyQ.size();
+    }
+
+    /**
+     * Gives up the SimThread with the largest virtual runtime, the one that
+     * would wait longest here.
+     */
+    public SimThread steal()
+    {
+        return readyQ.pollLast();
+    }
+
+    /**
+     * Writes the smallest virtual runtime, the heap in its array order, and
+     * the thread being charged.  Each SimThread writes its own virtual
+     * runtime, as its lead over the smallest one.
+     */
+    public void save(Snapshot out)
+    {
+        out.putLong(minVruntime);
+        out.putLong(dispatched);
+        out.putThread(current);
+        out.putInt(readyQ.size());
+        for (int i=0; i<readyQ.size(); i++) {
+            out.putThread(readyQ.at(i));
+        }
+    }
+
+    public void restore(Snapshot in)
+    {
+        minVruntime = in.getLong();
+        dispatched = in.getLong();
+        current = in.getThread();
+        if (current != null) {
+            adopt(current);
+        }
+        for (int n = in.getInt(); n > 0; n--) {
+            SimThread st = in.getThread();
+            adopt(st);
+            readyQ.add(st);
+        }
+    }
+}
@@ -1,139 +1,244 @@
 /**
  * The Clock runs as a separate thread from the rest of the simulation,
- * updating the status of each SimThread once per time unit.
- * 
+ * advancing the SimEngine by one time unit (or a multiple of them) per time
+ * unit of real time.  At speed 0 the Clock runs flat out instead: it hands
+ * the SimEngine a batch of ticks at a time, sized so that each batch takes
+ * about one GUI frame, so the display keeps up while quiet stretches of
+ * time are skipped in bulk.  Either way, the Clock can be told to stop by
+ * itself at a given tick, or when every SimThread is done.
+ *
+ * The Clock thread is the simulation thread: other threads (such as the
+ * GUI's) don't change its fields or the simulation directly, but post
+ * commands (see CommandQueue), which the Clock carries out between ticks.
+ * The Clock parks while it is stopped, and is unparked when a command
+ * arrives.
+ *
  * @author Adam Fischbach - Widener University
  * @version Fall 2012
  */
 
-import javax.swing.JOptionPane;
+import java.util.concurrent.locks.LockSupport;
 
 public class Clock extends Thread {
 
-    private OS os;              // Reference to OS object.
-    private GUI gui;			// Reference to GUI object
-    private int speed;			// A single time unit of simulation (in milliseconds)
-    private boolean stopped;	// Is simulation stopped?
-    private boolean stepping;	// Is simulation being stepped through?
-    
+    private static final long FRAME = 1000000000L / GUI.FRAME_RATE;    // Time a batch should take at full speed (in nanoseconds)
+
+    private OS os;                      // Told when the Clock stops by itself.
+    private SimEngine engine;           // Updates the status of the SimThreads.
+    private volatile int speed;         // A single time unit of simulation (in milliseconds, 0 for full speed)
+    private volatile int multiplier;    // Time units simulated per time unit of real time
+    private volatile boolean stopped;   // Is simulation stopped?
+    private boolean stepping;           // Is simulation being stepped through? (Clock thread only)
+    private long until;                 // Tick at which to stop (Long.MAX_VALUE for none; Clock thread only)
+    private boolean untilDone;          // Stop when every SimThread is done? (Clock thread only)
+    private long batch;                 // Ticks per batch at full speed (Clock thread only)
+
     /**
      * Constructor.
-     * @param preempt Is preemption turned on?
-     * @param quantum Length (in seconds) of time quantum.
-     * @param os Reference to the simulation's OS object.
+     * @param os Reference to the simulation's OS, told when the Clock stops by itself.
+     * @param engine Reference to the simulation's SimEngine.
      */
-    public Clock(OS os, GUI gui)
+    public Clock(OS os, SimEngine engine)
     {
-        this.os = os; 
-        this.gui = gui;
+        this.os = os;
+        this.engine = engine;
         speed = 1000;
+        multiplier = 1;
         stopped = true;
         stepping = true;
+        until = Long.MAX_VALUE;
+        batch = 1;
     }
-    
+
     /**
      * Sets simulation's time unit in milliseconds.
-     * @param speed time unit in milliseconds
+     * @param speed time unit in milliseconds (0 to run as fast as possible)
+     */
+    public void setSpeed(final int speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed: " + speed);
+        }
+        post(new Runnable() {
+            public void run() {
+                Clock.this.speed = speed;
+            }
+        });
+    }
+
+    /**
+     * Sets how many time units are simulated per time unit of real time
+     * (not used at full speed, nor when stepping).
+     * @param multiplier Time units per time unit of real time (at least 1).
+     */
+    public void setMultiplier(final int multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier: " + multiplier);
+        }
+        post(new Runnable() {
+            public void run() {
+                Clock.this.multiplier = multiplier;
+            }
+        });
+    }
+
+    /**
+     * @return Time units simulated per time unit of real time.
      */
-    public void setSpeed(int speed) {
-        this.speed = speed;
+    public int getMultiplier() {
+        return multiplier;
     }
-    
+
+    /**
+     * @return Simulation's time unit in milliseconds.
+     */
+    public int getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return true if the Clock is stopped (as of the last command it carried out).
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
     /**
      * Method executed upon Clock thread's creation.
-     * Repeatedly sleeps for one time unit and then updates the status of the SimThreads.
+     * Repeatedly sleeps for one time unit and then advances the simulation,
+     * carrying out commands as they arrive.
      */
     public void run()
     {
-        boolean reset;   // Should time quantum be restarted?
-        while(true) {       
-            reset = false;
-            for(int i=0; i<os.getQuantum() && !reset; i++) {  
-            	if (stopped) nap();
-                try {
-                    Thread.sleep(speed);     // Sleep for one time unit.
-                } catch (Exception e) {
-                    JOptionPane.showMessageDialog(null, "Something went horribly wrong in the clock!");
-                    System.exit(0);
-                }
-                incrementThreads();         // Update status of Queued and Blocked SimThreads.
-                reset = incrementRunning(); // Update status of Running thread.
-                if (stepping) stopped = true;
+        while(true) {
+            engine.runCommands();
+            if (stopped) {
+                LockSupport.park(this);     // Until a command arrives.
+                continue;
+            }
+            if (speed == 0 && !stepping) {
+                runBatch();
+                continue;
             }
-            if (os.getPreempt() && !reset) {        // "Interrupt" if time quantum exceeded (and preemption is on).
-                os.interrupt();
+            long start = System.nanoTime();
+            long left;
+            while (!stopped && (left = start + speed * 1000000L - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, left);      // Sleep for one time unit...
+                engine.runCommands();                   // ...unless there is something to do.
+            }
+            for (int n = stepping ? 1 : multiplier; n > 0 && !stopped; n--) {
+                engine.step();           // Update status of SimThreads and the time quantum.
+                if (engine.getTime() >= until || (untilDone && engine.isDone())) {
+                    halt();
+                }
             }
+            if (stepping) stopped = true;
+        }
+    }
+
+    /*
+     * Runs one batch of ticks at full speed, skipping the quiet ones, and
+     * sizes the next batch so it takes about one frame.  Commands posted
+     * meanwhile are carried out within the batch (see SimEngine.run), so a
+     * pause takes effect at the end of it.  When nothing is left to run, the
+     * Clock stops if it was to run until every SimThread is done, and
+     * otherwise waits (still running) for a command, such as one that
+     * creates a SimThread.
+     */
+    private void runBatch()
+    {
+        long start = System.nanoTime();
+        long end = engine.getTime() + batch;
+        if (end < 0 || end > until) {
+            end = until;
+        }
+        boolean idle = engine.run(end) < end;
+        if (idle ? untilDone : end == until) {
+            halt();                     // The goal is reached.
+        } else if (idle) {
+            LockSupport.park(this);     // Until a command arrives.
+            return;
+        }
+        long took = System.nanoTime() - start;
+        if (took < FRAME / 2 && batch < Long.MAX_VALUE / 2) {
+            batch *= 2;
+        } else if (took > FRAME && batch > 1) {
+            batch /= 2;
         }
     }
-    
-    // Puts Clock thread to sleep.
-    private synchronized void nap() {
-    	try {
-    		wait();
-    	} catch (InterruptedException e) {
-    		JOptionPane.showMessageDialog(null, "Clock Interrupted");
-    		System.exit(0);
-    	}
+
+    // Stops the Clock by itself, having reached its goal.
+    private void halt()
+    {
+        stopped = true;
+        until = Long.MAX_VALUE;
+        untilDone = false;
+        os.halted();
     }
-    
-    // Wakes up Clock thread.
-    private synchronized void wakeUp() {
-    	notify();
+
+    /**
+     * Hands a command to the Clock thread, and wakes it up to carry it out.
+     * @param command The command.
+     */
+    public void post(Runnable command) {
+        engine.post(command);
+        LockSupport.unpark(this);
     }
-    
+
     /**
      * Stops (pauses) simulation.
      */
     public void pause() {
-        stopped = true;
+        post(new Runnable() {
+            public void run() {
+                stopped = true;
+            }
+        });
     }
-    
+
     /**
      * Starts simulation.
      */
     public void go() {
-        stepping = false;
-        stopped = false;
-        wakeUp();
-    }
-    
-    /**
-     * Advances simulation one time unit.
-     */
-    public void step() {
-        stepping = true;
-        stopped = false;
-        wakeUp();
+        post(new Runnable() {
+            public void run() {
+                stepping = false;
+                stopped = false;
+                until = Long.MAX_VALUE;
+                untilDone = false;
+            }
+        });
     }
-    
+
     /**
-     * Update status of Queued and Blocked SimThreads.
+     * Starts simulation, to stop by itself at the given tick or once every
+     * SimThread is done, whichever comes first.
+     * @param tick Tick at which to stop (Long.MAX_VALUE to run until every SimThread is done).
      */
-    private void incrementThreads()
-    {
-        for(SimThread st : os.getThreadList()) {
-            if (st.getState() == SimThread.State.QUEUED) {
-                gui.incrementQueueTime(st);
-            } else if (st.getState() == SimThread.State.BLOCKED) {
-                if(!st.keepWaiting()) {        // Increment time spent in Waiting state
-                    os.doneWaiting(st);        // Tell OS that thread is done waiting!
+    public void runUntil(final long tick) {
+        post(new Runnable() {
+            public void run() {
+                stepping = false;
+                until = tick;
+                untilDone = true;
+                stopped = false;
+                os.started();
+                if (engine.getTime() >= tick) {
+                    halt();
                 }
             }
-        }
+        });
     }
-    
+
     /**
-     * Update status of Running SimThread.
-     * @return true if SimThread has reached the end of its CPU burst.
+     * Advances simulation one time unit.
      */
-    private boolean incrementRunning()
-    {
-        SimThread st = os.getRunning();
-        if (st != null && !st.keepRunning()) {  // Increment time spent in Running state
-            os.systemCall(st);                  // SimThread done running...issues "system call"
-            return true;
-        }
-        return false;
+    public void step() {
+        post(new Runnable() {
+            public void run() {
+                stepping = true;
+                stopped = false;
+            }
+        });
     }
-        
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Commands for the simulation thread (the Clock, or whoever calls OS.run)
+ * from any other thread, such as the GUI's: pause, step, change the speed
+ * or the policy, create a SimThread, ...  Only the simulation thread changes
+ * the simulation, so it needs no locks; other threads hand it a Runnable
+ * instead, and it runs the commands in the order they were offered, between
+ * ticks.
+ *
+ * A lock-free multiple-producer, single-consumer queue: a linked list whose
+ * tail producers swap in with one atomic operation, and whose head only the
+ * consumer touches.  A command offered while the consumer is emptying the
+ * queue may have to wait for the next runAll.
+ */
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CommandQueue {
+
+    private static class Node {
+        Runnable command;
+        volatile Node next;
+
+        Node(Runnable command) { this.command = command; }
+    }
+
+    private AtomicReference<Node> tail;     // Last command offered (swapped by producers).
+    private Node head;                      // Last command run (consumer only); its next is the first to run.
+
+    /**
+     * Constructor.
+     */
+    public CommandQueue()
+    {
+        head = new Node(null);
+        tail = new AtomicReference<Node>(head);
+    }
+
+    /**
+     * Adds a command to the queue.  Any thread may call this.
+     * @param command The command.
+     */
+    public void offer(Runnable command)
+    {
+        Node n = new Node(command);
+        tail.getAndSet(n).next = n;
+    }
+
+    /**
+     * Runs the commands in the queue, in order.  Only the simulation thread
+     * may call this.
+     * @return true if any command was run.
+     */
+    public boolean runAll()
+    {
+        Node next = head.next;
+        if (next == null) {
+            return false;
+        }
+        do {
+            head = next;
+            Runnable command = next.command;
+            next.command = null;
+            command.run();
+            next = head.next;
+        } while (next != null);
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * One simulated CPU core.  Each core has its own Running SimThread, its own
+ * scheduling policy (and so its own ready queue), its own time quantum and
+ * its own count of the SimThreads that migrated to it.
+ *
+ * Policies don't talk to cores directly: the OS methods they call
+ * (getRunning, setRunning, setQuantum, ...) act on the core whose policy the
+ * OS is calling at the time.
+ *
+ * A time slice starts when a SimThread is put in the Running state, and its
+ * end is fixed then, as an absolute time, from the quantum the policy has
+ * set by the end of that time unit.  Changing the quantum later only affects
+ * the slices that start afterwards, so a Running SimThread's slice never
+ * changes under it, and the SimEngine can treat the end of each slice as an
+ * event instead of counting every time unit against the quantum.
+ */
+public class Core {
+
+    private int id;                     // Core number, 0 to cores-1.
+    private SchedulingPolicy policy;    // Scheduling algorithm and ready queue of this core.
+    private SimThread running;          // The SimThread running on this core.
+    private int quantum;                // Length of time quantum.
+    private boolean preempt;            // Is preemption turned on?
+    private long sliceStart;            // Time at which the current time quantum started.
+    private long sliceEnd;              // Time at which the Running SimThread's time quantum runs out.
+    private long migrations;            // Number of SimThreads that moved here from another core.
+    private long steals;                // Number of SimThreads this core stole from other cores.
+
+    /**
+     * Constructor.
+     * @param id Core number.
+     */
+    public Core(int id)
+    {
+        this.id = id;
+        running = null;
+        quantum = 1;
+        preempt = false;
+        sliceStart = 0;
+        sliceEnd = 1;
+        migrations = 0;
+        steals = 0;
+    }
+
+    /**
+     * @return Core number.
+     */
+    public int getID() { return id; }
+
+    /**
+     * @return The core's scheduling policy.
+     */
+    public SchedulingPolicy getPolicy() { return policy; }
+
+    /**
+     * @return The SimThread running on this core (null if idle).
+     */
+    public SimThread getRunning() { return running; }
+
+    /**
+     * @return Length of this core's time quantum.
+     */
+    public int getQuantum() { return quantum; }
+
+    /**
+     * @return true if preemption is on for this core.
+     */
+    public boolean getPreempt() { return preempt; }
+
+    /**
+     * @return Time at which the current time quantum started.
+     */
+    public long getSliceStart() { return sliceStart; }
+
+    /**
+     * @return Time at which the Running SimThread's time quantum runs out.
+     */
+    public long getSliceEnd() { return sliceEnd; }
+
+    /**
+     * @return Number of SimThreads that moved here from another core.
+     */
+    public long getMigrations() { return migrations; }
+
+    /**
+     * @return Number of SimThreads this core stole from other cores.
+     */
+    public long getSteals() { return steals; }
+
+    /**
+     * @return Number of SimThreads on this core, Running or in its ready queue.
+     */
+    public int load()
+    {
+        return policy.size() + (running == null ? 0 : 1);
+    }
+
+    void setPolicy(SchedulingPolicy policy) { this.policy = policy; }
+
+    void setRunning(SimThread st) { running = st; }
+
+    // Sets the quantum of the slices to come (and of the current one, if it started at the given time).
+    void setQuantum(int quantum, long now)
+    {
+        this.quantum = quantum;
+        if (running != null && sliceStart == now) {
+            sliceEnd = now + quantum;
+        }
+    }
+
+    // Starts a time slice for the SimThread just put in the Running state.
+    void startSlice(long now)
+    {
+        sliceStart = now;
+        sliceEnd = now + quantum;
+    }
+
+    void setPreempt(boolean tf) { preempt = tf; }
+
+    void setSlice(long start, long end)
+    {
+        sliceStart = start;
+        sliceEnd = end;
+    }
+
+    void migrated() { migrations++; }
+
+    void stole() { steals++; }
+
+    void setCounts(long migrations, long steals)
+    {
+        this.migrations = migrations;
+        this.steals = steals;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * A SimListener that only counts what happens, for headless runs that want
+ * a summary of the simulation without the cost of displaying it.
+ */
+public class CountingListener extends SimAdapter {
+
+    private long dispatches;        // Number of times a SimThread entered the Running state.
+    private long blocks;            // Number of times a SimThread entered the Blocked state.
+    private long enqueues;          // Number of times a SimThread entered the Queued state.
+    private long completions;       // Number of SimThreads that are done.
+    private long priorityChanges;   // Number of priority changes.
+    private long quantumChanges;    // Number of time quantum changes.
+    private long queueTime;         // Total time spent Queued by the SimThreads that finished.
+
+    public void updateStatus(SimThread t) {
+        switch(t.getState()) {
+        case RUNNING: dispatches++; break;
+        case BLOCKED: blocks++; break;
+        case QUEUED: enqueues++; break;
+        case DONE: completions++; queueTime += t.getQueueTime(t.getStateSince()); break;
+        }
+    }
+
+    public void updatePriority(SimThread t) {
+        priorityChanges++;
+    }
+
+    public void updateQuantum(int core, int q) {
+        quantumChanges++;
+    }
+
+    /**
+     * @return Number of times a SimThread was scheduled to run.
+     */
+    public long getDispatches() { return dispatches; }
+
+    /**
+     * @return Number of times a SimThread entered the Blocked state.
+     */
+    public long getBlocks() { return blocks; }
+
+    /**
+     * @return Number of times a SimThread entered the Queued state.
+     */
+    public long getEnqueues() { return enqueues; }
+
+    /**
+     * @return Number of SimThreads that finished.
+     */
+    public long getCompletions() { return completions; }
+
+    /**
+     * @return Number of priority changes.
+     */
+    public long getPriorityChanges() { return priorityChanges; }
+
+    /**
+     * @return Number of time quantum changes.
+     */
+    public long getQuantumChanges() { return quantumChanges; }
+
+    /**
+     * @return Total time spent Queued by the SimThreads that finished.
+     */
+    public long getQueueTime() { return queueTime; }
+
+    public String toString() {
+        return "dispatches=" + dispatches + " blocks=" + blocks + " enqueues=" + enqueues
+            + " completions=" + completions + " priorityChanges=" + priorityChanges
+            + " quantumChanges=" + quantumChanges;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * First Come, First Served: SimThreads run in the order they entered the
+ * ready queue, each until the end of its CPU burst.
+ */
+
+import java.util.ArrayDeque;
+
+public class FCFSPolicy implements SchedulingPolicy
+{
+    private ArrayDeque<SimThread> readyQ;   // SimThreads in the order they were queued
+    private OS os;                          // Reference to the "OS"
+
+    /**
+     * Constructor.
+     * @param os A reference to the simulation's OS object.
+     */
+    public FCFSPolicy(OS os)
+    {
+        this.os = os;
+        readyQ = new ArrayDeque<SimThread>();
+        os.setPreempt(false);
+    }
+
+    public void enqueue(SimThread st, int code)
+    {
+        if (os.getRunning() == null) {
+            os.setRunning(st);
+        } else {
+            readyQ.add(st);
+        }
+    }
+
+    public void scheduleThread()
+    {
+        os.setRunning(readyQ.poll());
+    }
+
+    public int size()
+    {
+        return readyQ.size();
+    }
+
+    public SimThread steal()
+    {
+        return readyQ.pollLast();
+    }
+
+    public void save(Snapshot out)
+    {
+        out.putInt(readyQ.size());
+        for (SimThread st : readyQ) {
+            out.putThread(st);
+        }
+    }
+
+    public void restore(Snapshot in)
+    {
+        for (int n = in.getInt(); n > 0; n--) {
+            readyQ.add(in.getThread());
+        }
+    }
+}
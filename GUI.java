@@ -1,5 +1,6 @@
 /**
  * Builds the graphical interface for the simulation.
+ * The GUI is the SimListener of a simulation that has a window.
  * 
  * @author Adam Fischbach - Widener University
  * @version Fall 2012
@@ -7,55 +8,141 @@
 
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.event.*;
 import java.awt.event.*;
 import java.awt.*;
 
-public class GUI {
+public class GUI implements SimListener {
+
+    public static final int FRAME_RATE = 30;    // Maximum number of times per second the display is redrawn.
+    public static final int QUEUE_SHOWN = 20;   // Number of Queued SimThreads listed in the ready queue display.
 
     private JFrame frame;			
-    private JLabel[] readyQueue;				// Display of SimThreads in Queued state
-    private SimThreadInfoPanel[] threadInfo;
-    private int inQueue;						// Number of SimThreads in Queued state
+    private JLabel readyQueue;					// Display of SimThreads in Queued state
+    private ThreadTableModel threadInfo;
     private JLabel preemption;
-    private JLabel quantum;
+    private JLabel[] coreLabels;                // Running SimThread and time quantum of each core
     private JCheckBoxMenuItem logFile;
     private JCheckBoxMenuItem terminal;
     private JButton run;
     private JButton slow;
     private JButton slower;
     private JButton slowest;
+    private JButton fastest;
+    private JSlider multiplier;                 // Time units simulated per time unit of real time
+    private JTextField until;                   // Time to run until (blank to run until every SimThread is done)
     private OS os;
     
+    // Latest state of the simulation, written by the Clock thread and drawn by
+    // the event dispatch thread.  Guarded by "this".
+    private ThreadTableModel.Row[] rows;        // Latest state of each SimThread, by ID
+    private int numRows;                        // Number of SimThreads seen so far
+    private int[] dirty;                        // IDs of rows changed since the last frame
+    private int numDirty;
+    private int firstQueued;                    // ID of most recently Queued SimThread (-1 if none)
+    private int inQueue;						// Number of SimThreads in Queued state
+    private boolean queueDirty;
+    private int[] coreRunning;                  // ID of the SimThread running on each core (-1 if idle)
+    private int[] coreQuantum;                  // Time quantum of each core
+    private boolean preemptValue;
+    private boolean settingsDirty;
+    private long timeValue;
+    private boolean timeDirty;
+    
+    private ThreadTableModel.Row[] frameRows;   // Rows copied out for the frame being drawn (EDT only)
+    private int[] frameQueue;                   // Ready queue copied out for the frame being drawn (EDT only)
+    private int[] frameRunning;                 // Per-core state copied out for the frame being drawn (EDT only)
+    private int[] frameQuantum;
+    
+    /**
+     * Constructor.
+     * @param os Reference to the simulation's OS object (null to only display
+     *           a simulation, as when replaying a trace; the controls are then disabled).
+     */
     public GUI(OS os) {
-        inQueue = 0;
         this.os = os;
-        makeFrame();
+        rows = new ThreadTableModel.Row[16];
+        numRows = 0;
+        dirty = new int[16];
+        numDirty = 0;
+        frameRows = new ThreadTableModel.Row[0];
+        frameQueue = new int[QUEUE_SHOWN];
+        firstQueued = -1;
+        inQueue = 0;
+        int numCores = os == null ? 1 : os.getCores().length;
+        coreRunning = new int[numCores];
+        coreQuantum = new int[numCores];
+        frameRunning = new int[numCores];
+        frameQuantum = new int[numCores];
+        java.util.Arrays.fill(coreRunning, -1);
+        java.util.Arrays.fill(coreQuantum, 1);
+        settingsDirty = true;
+        if (SwingUtilities.isEventDispatchThread()) {
+            makeFrame();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    public void run() {
+                        makeFrame();
+                    }
+                });
+            } catch (Exception e) {
+                throw new RuntimeException("Could not build the window", e);
+            }
+        }
+        new Timer(1000 / FRAME_RATE, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                render();
+            }
+        }).start();
     }
     
     /**
      * Updates displayed state of specified SimThread and the list of Queued SimThreads.
      * @param t SimThread to update
      */
-    public void updateStatus(SimThread t) {
+    public synchronized void updateStatus(SimThread t) {
         SimThread.State state = t.getState();
         int id = t.getID();
-        threadInfo[id].updateState(state.toString());
+        ThreadTableModel.Row r = row(id);
+        int core = t.getCore();
+        if (r.state == SimThread.State.RUNNING && r.core >= 0 && r.core < coreRunning.length
+                && coreRunning[r.core] == id) {
+            coreRunning[r.core] = -1;
+            settingsDirty = true;
+        }
+        if (state == SimThread.State.RUNNING && core >= 0 && core < coreRunning.length) {
+            coreRunning[core] = id;
+            settingsDirty = true;
+        }
+        r.core = core;
+        r.state = state;
+        r.since = t.getStateSince();
+        r.queueTime = t.getQueueTime(r.since);
+        r.waitTime = t.getWaitTime();
+        markDirty(id);
         if (state == SimThread.State.QUEUED) {
-            for(int i=inQueue; i>0; i--) {
-                readyQueue[i].setText(readyQueue[i-1].getText());
+            r.prevQueued = -1;
+            r.nextQueued = firstQueued;
+            if (firstQueued >= 0) {
+                rows[firstQueued].prevQueued = id;
             }
-            readyQueue[0].setText(id+"");
+            firstQueued = id;
             inQueue++;
-        } else if (state == SimThread.State.RUNNING) {
-            for(int i=0; i<inQueue; i++) {
-                if(readyQueue[i].getText().equals(""+id)) {
-                    for(int j=i; j<inQueue; j++) {
-                        readyQueue[j].setText(readyQueue[j+1].getText());
-                    }
-                    i=inQueue;
-                    inQueue--;
-                }
+            queueDirty = true;
+        } else if (state == SimThread.State.RUNNING && (r.prevQueued >= 0 || firstQueued == id)) {
+            if (r.prevQueued >= 0) {
+                rows[r.prevQueued].nextQueued = r.nextQueued;
+            } else {
+                firstQueued = r.nextQueued;
+            }
+            if (r.nextQueued >= 0) {
+                rows[r.nextQueued].prevQueued = r.prevQueued;
             }
+            r.prevQueued = -1;
+            r.nextQueued = -1;
+            inQueue--;
+            queueDirty = true;
         }        
     }
     
@@ -63,33 +150,39 @@ public class GUI {
      * Updates preempt display.
      * @param tf Is preemption on?
      */
-    public void updatePreemption(boolean tf) {
-        String onoff = tf ? "ON" : "OFF";
-        preemption.setText("Preemption: " + onoff);
+    public synchronized void updatePreemption(boolean tf) {
+        preemptValue = tf;
+        settingsDirty = true;
     }
     
     /**
-     * Updates time quantum display.
+     * Updates time quantum display for the specified core.
+     * @param core Core number.
      * @param q Time quantum.
      */
-    public void updateQuantum(int q) {
-        quantum.setText("Quantum: " + q);
+    public synchronized void updateQuantum(int core, int q) {
+        if (core < coreQuantum.length) {
+            coreQuantum[core] = q;
+            settingsDirty = true;
+        }
     }
     
     /**
      * Updates priority display for specified SimThread.
      * @param t SimThread to update
      */
-    public void updatePriority(SimThread t) {
-        threadInfo[t.getID()].updatePriority(t.getPriority());
+    public synchronized void updatePriority(SimThread t) {
+        row(t.getID()).priority = t.getPriority();
+        markDirty(t.getID());
     }
     
     /**
-     * Increments the displayed queue (wait) time for the specified SimThread.
-     * @param t SimThread to update.
+     * Updates the time used to display block and queue times.
+     * @param time Current simulated time.
      */
-    public void incrementQueueTime(SimThread t) {
-        threadInfo[t.getID()].incrementQueueTime();
+    public synchronized void updateTime(long time) {
+        timeValue = time;
+        timeDirty = true;
     }
     
     /**
@@ -97,40 +190,151 @@ public class GUI {
      * @param t SimThread to update.
      * @param time Remaining run time. 
      */
-    public void updateRunTime(SimThread t, int time) {
-        threadInfo[t.getID()].updateRunTime(time);
+    public synchronized void updateRunTime(SimThread t, int time) {
+        row(t.getID()).runTime = time;
+        markDirty(t.getID());
     }
     
     /**
-     * Updates the displayed remaining block time for the specified SimThread.
-     * @param t SimThread to update.
-     * @param time Remaining block time.
+     * Updates the log file output check box.
+     * @param tf Is log file output on?
      */
-    public void updateBlockTime(SimThread t, int time) {
-        threadInfo[t.getID()].updateBlockTime(time);
+    public void updateFileOut(final boolean tf) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                logFile.setState(tf);
+            }
+        });
     }
     
     /**
-     * Returns true if terminal output check box is selected.
-     * @return true if terminal output selected.
+     * Updates the RUN/PAUSE button when the simulation starts or stops by itself.
+     * @param tf Is the simulation stopped?
      */
-    public boolean terminalOut() {
-        return terminal.getState();
+    public void updateStopped(final boolean tf) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                run.setText(tf ? "RUN" : "PAUSE");
+            }
+        });
     }
     
-    /**
-     * Returns true if log file output check box is selected.
-     * @return true if log file output selected.
-     */
-    public boolean fileOut() {
-        return logFile.getState();
+    // Returns the row for a SimThread, making room for it if it is new.
+    private ThreadTableModel.Row row(int id) {
+        if (id >= rows.length) {
+            ThreadTableModel.Row[] bigger = new ThreadTableModel.Row[Math.max(id + 1, rows.length * 2)];
+            System.arraycopy(rows, 0, bigger, 0, numRows);
+            rows = bigger;
+        }
+        while (numRows <= id) {
+            rows[numRows] = new ThreadTableModel.Row(numRows);
+            numRows++;
+        }
+        return rows[id];
     }
     
-    /**
-     * De-selects the log file output check box.
+    // Records that a SimThread's row must be redrawn in the next frame.
+    private void markDirty(int id) {
+        if (!rows[id].dirty) {
+            rows[id].dirty = true;
+            if (numDirty == dirty.length) {
+                int[] bigger = new int[dirty.length * 2];
+                System.arraycopy(dirty, 0, bigger, 0, numDirty);
+                dirty = bigger;
+            }
+            dirty[numDirty++] = id;
+        }
+    }
+    
+    /*
+     * Draws one frame (on the event dispatch thread).  The rows that changed since
+     * the last frame are copied out while holding the lock, so the simulation is
+     * never held up by Swing.  The table is then told which rows changed, and
+     * repaints only those that are visible.
      */
-    public void cancelFile() {
-        logFile.setState(false);
+    private void render() {
+        int n;
+        int count;
+        int queueLength = -1;
+        int shown = 0;
+        boolean settings = false;
+        boolean p = false;
+        long time = -1;
+        synchronized(this) {
+            n = numDirty;
+            count = numRows;
+            if (frameRows.length < n) {
+                ThreadTableModel.Row[] bigger = new ThreadTableModel.Row[Math.max(n, frameRows.length * 2)];
+                System.arraycopy(frameRows, 0, bigger, 0, frameRows.length);
+                for(int i=frameRows.length; i<bigger.length; i++) {
+                    bigger[i] = new ThreadTableModel.Row(-1);
+                }
+                frameRows = bigger;
+            }
+            for(int i=0; i<n; i++) {
+                ThreadTableModel.Row r = rows[dirty[i]];
+                frameRows[i].copy(r);
+                r.dirty = false;
+            }
+            numDirty = 0;
+            if (queueDirty) {
+                for(int id=firstQueued; id >= 0 && shown < QUEUE_SHOWN; id=rows[id].nextQueued) {
+                    frameQueue[shown++] = id;
+                }
+                queueLength = inQueue;
+                queueDirty = false;
+            }
+            if (settingsDirty) {
+                System.arraycopy(coreRunning, 0, frameRunning, 0, coreRunning.length);
+                System.arraycopy(coreQuantum, 0, frameQuantum, 0, coreQuantum.length);
+                p = preemptValue;
+                settings = true;
+                settingsDirty = false;
+            }
+            if (timeDirty) {
+                time = timeValue;
+                timeDirty = false;
+            }
+        }
+        threadInfo.setRowCount(count);
+        if (time >= 0) {
+            // Block and queue times change with the time, so every row is out of date.
+            for(int i=0; i<n; i++) {
+                threadInfo.set(frameRows[i]);
+            }
+            threadInfo.setTime(time);
+            if (count > 0) {
+                threadInfo.fireTableRowsUpdated(0, count - 1);
+            }
+        } else if (n > 0) {
+            int first = Integer.MAX_VALUE;
+            int last = -1;
+            for(int i=0; i<n; i++) {
+                threadInfo.set(frameRows[i]);
+                first = Math.min(first, frameRows[i].id);
+                last = Math.max(last, frameRows[i].id);
+            }
+            threadInfo.fireTableRowsUpdated(first, last);
+        }
+        if (queueLength >= 0) {
+            StringBuilder text = new StringBuilder();
+            for(int i=0; i<shown; i++) {
+                text.append(frameQueue[i]).append("  ");
+            }
+            if (queueLength > shown) {
+                text.append("(+").append(queueLength - shown).append(" more)");
+            } else if (queueLength == 0) {
+                text.append("-");
+            }
+            readyQueue.setText(text.toString());
+        }
+        if (settings) {
+            for(int i=0; i<coreLabels.length; i++) {
+                coreLabels[i].setText("CPU " + i + ": " + (frameRunning[i] < 0 ? "idle" : "Thread " + frameRunning[i])
+                    + ", quantum " + frameQuantum[i]);
+            }
+            preemption.setText("Preemption: " + (p ? "ON" : "OFF"));
+        }
     }
     
     private void makeFrame() {
@@ -144,9 +348,12 @@ public class GUI {
         panel.add(createQueuePanel(), BorderLayout.NORTH);
         panel.add(createSidePanel(), BorderLayout.EAST);
         panel.add(createMainPanel(), BorderLayout.CENTER);
+        if (os != null) {
+            panel.add(new MetricsPanel(os.getMetrics()), BorderLayout.SOUTH);
+        }
         frame.add(panel);
         
-        frame.setSize(600, 400);
+        frame.setSize(600, os == null ? 400 : 550);
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
@@ -157,8 +364,19 @@ public class GUI {
         JMenu output = new JMenu("Output");
         logFile = new JCheckBoxMenuItem("Log file");
         terminal = new JCheckBoxMenuItem("Terminal");
+        logFile.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                os.setFileOut(logFile.getState());
+            }
+        });
+        terminal.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                os.setTerminalOut(terminal.getState());
+            }
+        });
         output.add(logFile);
         output.add(terminal);
+        output.setEnabled(os != null);
         menuBar.add(output);
         
         return menuBar;
@@ -169,16 +387,11 @@ public class GUI {
         
         panel.add(new JLabel("Ready Queue: "), BorderLayout.WEST);
         
-        JPanel queue = new JPanel(new GridLayout(1, OS.MAX_THREADS, 5, 5));
-        readyQueue = new JLabel[OS.MAX_THREADS+1];
-        for(int i=0; i<OS.MAX_THREADS+1; i++) {
-            readyQueue[i] = new JLabel("-", SwingConstants.CENTER);
-            readyQueue[i].setBorder(BorderFactory.createLoweredBevelBorder());
-            readyQueue[i].setBackground(Color.WHITE);
-            readyQueue[i].setOpaque(true);
-            queue.add(readyQueue[i]);
-        }
-        panel.add(queue, BorderLayout.CENTER);
+        readyQueue = new JLabel("-", SwingConstants.LEFT);
+        readyQueue.setBorder(BorderFactory.createLoweredBevelBorder());
+        readyQueue.setBackground(Color.WHITE);
+        readyQueue.setOpaque(true);
+        panel.add(readyQueue, BorderLayout.CENTER);
         
         return panel;
     }
@@ -186,71 +399,102 @@ public class GUI {
     private JPanel createSidePanel() {
         JPanel panel = new JPanel(new BorderLayout(5, 5));
         
-        JPanel qp = new JPanel(new GridLayout(2, 1, 5, 5));
-        quantum = new JLabel("Quantum: 1", SwingConstants.LEFT);
+        JPanel qp = new JPanel(new GridLayout(coreRunning.length + 1, 1, 5, 5));
+        coreLabels = new JLabel[coreRunning.length];
+        for(int i=0; i<coreLabels.length; i++) {
+            coreLabels[i] = new JLabel("CPU " + i + ": idle, quantum 1", SwingConstants.LEFT);
+            qp.add(coreLabels[i]);
+        }
         preemption = new JLabel("Preemption: OFF", SwingConstants.LEFT);
-        qp.add(quantum);
         qp.add(preemption);
         panel.add(qp, BorderLayout.SOUTH);
         
         JPanel centerPanel = new JPanel(new GridLayout(3, 1));
         
-        JPanel buttonPanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        JPanel buttonPanel = new JPanel(new GridLayout(5, 1, 5, 5));
         buttonPanel.setBorder(new CompoundBorder(new EtchedBorder(), new EmptyBorder(5, 5, 5, 5)));
         run = new JButton("RUN");
         run.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                if(os.isStopped()) {
-                    run.setText("PAUSE");
-                } else {
-                    run.setText("RUN");
-                }
-                os.startStop();
+                os.startStop();             // The text changes in updateStopped.
             }
         });
         buttonPanel.add(run);
         JButton step = new JButton("STEP");
         step.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                run.setText("RUN");
                 os.step();
             }
         });
         buttonPanel.add(step);
         
-        JPanel speedPanel = new JPanel(new GridLayout(1, 3, 5, 5));
-        slow = new JButton("1");
-        slow.addActionListener(new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                slow.setEnabled(false);
-                slower.setEnabled(true);
-                slowest.setEnabled(true);
-                os.speed(250);
-            }
-        });
+        JPanel speedPanel = new JPanel(new GridLayout(1, 4, 5, 5));
+        fastest = speedButton("MAX", 0);
+        fastest.setToolTipText("Run as fast as possible");
+        slow = speedButton("1", 250);
+        slower = speedButton("2", 500);
+        slowest = speedButton("3", 1000);
+        slowest.setEnabled(false);
+        speedPanel.add(fastest);
         speedPanel.add(slow);
-        slower = new JButton("2");
-        slower.addActionListener(new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                slower.setEnabled(false);
-                slow.setEnabled(true);
-                slowest.setEnabled(true);
-                os.speed(500);
+        speedPanel.add(slower);
+        speedPanel.add(slowest);
+        buttonPanel.add(speedPanel);
+        
+        final JLabel times = new JLabel("x1", SwingConstants.RIGHT);
+        multiplier = new JSlider(1, 100, 1);
+        multiplier.setToolTipText("Time units per step of the clock");
+        multiplier.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                times.setText("x" + multiplier.getValue());
+                if (!multiplier.getValueIsAdjusting()) {
+                    os.multiplier(multiplier.getValue());
+                }
             }
         });
-        speedPanel.add(slower);
-        slowest = new JButton("3");
-        slowest.setEnabled(false);
-        slowest.addActionListener(new ActionListener() {
+        JPanel multiplierPanel = new JPanel(new BorderLayout(5, 5));
+        multiplierPanel.add(multiplier, BorderLayout.CENTER);
+        multiplierPanel.add(times, BorderLayout.EAST);
+        buttonPanel.add(multiplierPanel);
+        
+        until = new JTextField(6);
+        until.setToolTipText("Time to run until (blank to run until every thread is DONE)");
+        final JButton runUntil = new JButton("UNTIL");
+        ActionListener untilAction = new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                slowest.setEnabled(false);
-                slow.setEnabled(true);
-                slower.setEnabled(true);
-                os.speed(1000);
+                String text = until.getText().trim();
+                long tick = Long.MAX_VALUE;
+                if (!text.isEmpty() && !text.equalsIgnoreCase("DONE")) {
+                    try {
+                        tick = Long.parseLong(text);
+                    } catch (NumberFormatException ex) {
+                        Toolkit.getDefaultToolkit().beep();
+                        until.selectAll();
+                        return;
+                    }
+                }
+                run.setText("PAUSE");
+                os.runUntil(tick);
             }
-        });
-        speedPanel.add(slowest);
-        buttonPanel.add(speedPanel);
+        };
+        runUntil.addActionListener(untilAction);
+        until.addActionListener(untilAction);
+        JPanel untilPanel = new JPanel(new BorderLayout(5, 5));
+        untilPanel.add(runUntil, BorderLayout.WEST);
+        untilPanel.add(until, BorderLayout.CENTER);
+        buttonPanel.add(untilPanel);
+        
+        if (os == null) {
+            run.setEnabled(false);
+            step.setEnabled(false);
+            fastest.setEnabled(false);
+            slow.setEnabled(false);
+            slower.setEnabled(false);
+            slowest.setEnabled(false);
+            multiplier.setEnabled(false);
+            until.setEnabled(false);
+            runUntil.setEnabled(false);
+        }
         
         centerPanel.add(new JPanel());
         centerPanel.add(buttonPanel);
@@ -261,31 +505,55 @@ public class GUI {
         return panel;
     }
     
-    private JPanel createMainPanel() {
-        JPanel panel = new JPanel(new GridLayout(OS.MAX_THREADS+1, 1, 5, 5));
+    // Makes a button that sets the speed, and is disabled while that speed is chosen.
+    private JButton speedButton(String label, final int ms) {
+        final JButton b = new JButton(label);
+        b.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                fastest.setEnabled(true);
+                slow.setEnabled(true);
+                slower.setEnabled(true);
+                slowest.setEnabled(true);
+                b.setEnabled(false);
+                os.speed(ms);
+            }
+        });
+        return b;
+    }
+    
+    private JComponent createMainPanel() {
+        threadInfo = new ThreadTableModel();
+        JTable table = new JTable(threadInfo);
+        table.setDefaultRenderer(Object.class, new StateRenderer());
+        table.setFillsViewportHeight(true);
+        table.setRowSelectionAllowed(false);
+        return new JScrollPane(table);
+    }
+    
+    // Draws each cell centered, in the color for its SimThread's state.
+    private static class StateRenderer extends javax.swing.table.DefaultTableCellRenderer {
         
-        JPanel headings = new JPanel(new GridLayout(1, 6, 5, 5));
-        JLabel t = new  JLabel("Thread", SwingConstants.CENTER);
-        headings.add(t);
-        JLabel p = new  JLabel("Priority", SwingConstants.CENTER);
-        headings.add(p);
-        JLabel s = new  JLabel("State", SwingConstants.CENTER);
-        headings.add(s);
-        JLabel r = new JLabel("Run Time", SwingConstants.CENTER);
-        headings.add(r);
-        JLabel b = new JLabel("Blocked", SwingConstants.CENTER);
-        headings.add(b);
-        JLabel q = new  JLabel("Queued", SwingConstants.CENTER);
-        headings.add(q);
-        panel.add(headings);
+        public static final long serialVersionUID = 1;
         
-        threadInfo = new SimThreadInfoPanel[OS.MAX_THREADS];
-        for(int i=0; i<OS.MAX_THREADS; i++) {
-            threadInfo[i] = new SimThreadInfoPanel(i, -1, -1, -1, "NONE");
-            panel.add(threadInfo[i]);
+        StateRenderer() {
+            setHorizontalAlignment(SwingConstants.CENTER);
         }
         
-        return panel;
+        public Component getTableCellRendererComponent(JTable table, Object value,
+                boolean selected, boolean focused, int row, int col) {
+            super.getTableCellRendererComponent(table, value, selected, focused, row, col);
+            SimThread.State state = ((ThreadTableModel) table.getModel()).getState(row);
+            if(state == SimThread.State.RUNNING) {
+                setForeground(Color.RED);
+            } else if (state == SimThread.State.BLOCKED) {
+                setForeground(Color.BLUE);
+            } else if (state == SimThread.State.QUEUED){
+                setForeground(Color.BLACK);
+            } else {
+                setForeground(Color.LIGHT_GRAY);
+            }
+            return this;
+        }
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+/**
+ * A histogram of non-negative long values with a fixed relative precision,
+ * in the style of HdrHistogram: values below 128 have a bucket each, and
+ * every larger power of two is split into 64 equal buckets, so a value is
+ * stored to within about 1.6%.  Recording a value is a couple of bit
+ * operations and an array increment, and the histogram never grows, no
+ * matter how many values it holds or how big they are.
+ *
+ * Percentiles are reported as the highest value in the bucket that holds
+ * the percentile (but never more than the largest value recorded).
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 6;                  // 2^SUB_BITS buckets per power of two
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    private long[] counts;      // Number of values in each bucket.
+    private long total;         // Number of values recorded.
+    private long sum;           // Sum of the values recorded.
+    private long min;
+    private long max;
+
+    /**
+     * Constructor.  Creates an empty histogram.
+     */
+    public Histogram()
+    {
+        counts = new long[BUCKETS];
+        reset();
+    }
+
+    /**
+     * Constructor.  Creates a copy of a histogram.
+     * @param h The histogram to copy.
+     */
+    public Histogram(Histogram h)
+    {
+        counts = h.counts.clone();
+        total = h.total;
+        sum = h.sum;
+        min = h.min;
+        max = h.max;
+    }
+
+    /**
+     * Adds a value to the histogram.
+     * @param value The value (negative values count as 0).
+     */
+    public void record(long value)
+    {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucket(value)]++;
+        total++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void reset()
+    {
+        java.util.Arrays.fill(counts, 0);
+        total = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * @return Number of values recorded.
+     */
+    public long getCount() { return total; }
+
+    /**
+     * @return Smallest value recorded (0 if none).
+     */
+    public long getMin() { return total == 0 ? 0 : min; }
+
+    /**
+     * @return Largest value recorded (0 if none).
+     */
+    public long getMax() { return max; }
+
+    /**
+     * @return Mean of the values recorded (0 if none).
+     */
+    public double getMean() { return total == 0 ? 0 : (double) sum / total; }
+
+    /**
+     * Returns the value below which the given percentage of the values fall.
+     * @param percentile A percentage, from 0 to 100 (for example 99.9).
+     * @return The value at that percentile (0 if the histogram is empty).
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * total);
+        rank = Math.max(rank, 1);
+        long seen = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Writes the histogram to a snapshot.  Only the buckets in use are written.
+     * @param out The snapshot being written.
+     */
+    void save(Snapshot out)
+    {
+        out.putLong(total);
+        out.putLong(sum);
+        out.putLong(min);
+        out.putLong(max);
+        int used = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            if (counts[i] != 0) {
+                used++;
+            }
+        }
+        out.putInt(used);
+        int last = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            if (counts[i] != 0) {
+                out.putInt(i - last);           // Gap from the previous bucket in use.
+                out.putLong(counts[i]);
+                last = i;
+            }
+        }
+    }
+
+    /**
+     * Replaces the histogram's values with those written by save.
+     * @param in The snapshot being read.
+     */
+    void restore(Snapshot in)
+    {
+        java.util.Arrays.fill(counts, 0);
+        total = in.getLong();
+        sum = in.getLong();
+        min = in.getLong();
+        max = in.getLong();
+        int used = in.getInt();
+        int i = 0;
+        for (int k=0; k<used; k++) {
+            i += in.getInt();
+            counts[i] = in.getLong();
+        }
+    }
+
+    public String toString()
+    {
+        return "n=" + total + " p50=" + getValueAtPercentile(50) + " p99=" + getValueAtPercentile(99)
+            + " p99.9=" + getValueAtPercentile(99.9) + " max=" + max;
+    }
+
+    // Index of the bucket holding a value.
+    private static int bucket(long value)
+    {
+        if (value < 2 * SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB + (int) (value >>> shift);
+    }
+
+    // Largest value that goes in a bucket.
+    private static long highest(int bucket)
+    {
+        if (bucket < 2 * SUB) {
+            return bucket;
+        }
+        int shift = bucket / SUB - 1;
+        long sub = bucket % SUB + SUB;
+        return ((sub + 1) << shift) - 1;
+    }
+}
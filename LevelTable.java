@@ -0,0 +1,283 @@
+/**
+ * The priority levels of the multilevel feedback queue (see Scheduler): how
+ * many there are and, for each level, its time quantum, the level a
+ * SimThread drops to when it uses up its quantum, the level it rises to
+ * when it returns from the Blocked state, and how long it may wait in the
+ * level's queue before it ages up one level.  Every lookup is an array
+ * index.  Against starvation, the table can also boost every Queued
+ * SimThread to the highest level periodically.
+ *
+ * A table never changes once made, so one can be loaded on any thread and
+ * handed to a running simulation, which switches to it between two ticks
+ * (see OS.setLevels).  watch() does this whenever a table file changes.
+ *
+ * A table file has one line per level, from level 0 (the lowest priority) up:
+ *   quantum[,expire,unblock[,age]]
+ * that is, the level's time quantum, the level to drop to when the quantum
+ * expires (one level down if left out; never a higher level, though it may
+ * stay where it is), the level to rise to on returning
+ * from the Blocked state (one level up if left out) and the longest wait in
+ * the level's queue before aging (0 or left out for never).  A line
+ *   boost=interval
+ * boosts every Queued SimThread to the highest level every interval time
+ * units.  Blank lines and lines starting with # are skipped.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LevelTable {
+
+    public static final LevelTable DEFAULT = of(Scheduler.DEFAULT_QUANTA);
+
+    private final int[] quanta;     // Time quantum of each level.
+    private final int[] expire;     // Level to drop to when the quantum expires.
+    private final int[] unblock;    // Level to rise to on returning from the Blocked state.
+    private final int[] age;        // Longest wait in each level before aging up (0 for never).
+    private final long boost;       // Time between boosts of every Queued SimThread (0 for never).
+
+    /**
+     * Constructor.
+     * @param quanta Time quantum of each level (at least 1 each); one entry per level.
+     * @param expire Level to drop to from each level when the quantum expires.
+     * @param unblock Level to rise to from each level on returning from the Blocked state.
+     */
+    public LevelTable(int[] quanta, int[] expire, int[] unblock)
+    {
+        this(quanta, expire, unblock, new int[quanta.length], 0);
+    }
+
+    /**
+     * Constructor.
+     * @param quanta Time quantum of each level (at least 1 each); one entry per level.
+     * @param expire Level to drop to from each level when the quantum expires (no higher than that level).
+     * @param unblock Level to rise to from each level on returning from the Blocked state.
+     * @param age Longest wait in each level's queue before moving up one level (0 for never).
+     * @param boost Time between boosts of every Queued SimThread to the highest level (0 for never).
+     */
+    public LevelTable(int[] quanta, int[] expire, int[] unblock, int[] age, long boost)
+    {
+        int n = quanta.length;
+        if (n < 1 || n > ReadyQueue.MAX_LEVELS) {
+            throw new IllegalArgumentException("levels: " + n);
+        }
+        if (expire.length != n || unblock.length != n || age.length != n) {
+            throw new IllegalArgumentException("Need " + n + " levels in every column");
+        }
+        for (int i=0; i<n; i++) {
+            if (quanta[i] < 1) {
+                throw new IllegalArgumentException("Level " + i + ": quantum " + quanta[i]);
+            }
+            if (expire[i] < 0 || expire[i] >= n || unblock[i] < 0 || unblock[i] >= n) {
+                throw new IllegalArgumentException("Level " + i + ": no such level to move to");
+            }
+            if (expire[i] > i) {
+                throw new IllegalArgumentException("Level " + i + ": expiring quantum would raise it to level " + expire[i]);
+            }
+            if (age[i] < 0) {
+                throw new IllegalArgumentException("Level " + i + ": age " + age[i]);
+            }
+        }
+        if (boost < 0) {
+            throw new IllegalArgumentException("boost: " + boost);
+        }
+        this.quanta = quanta.clone();
+        this.expire = expire.clone();
+        this.unblock = unblock.clone();
+        this.age = age.clone();
+        this.boost = boost;
+    }
+
+    /**
+     * Makes a table with the given quanta, where a SimThread drops one level
+     * when its quantum expires and rises one level when it returns from the
+     * Blocked state.
+     * @param quanta Time quantum of each level.
+     * @return The table.
+     */
+    public static LevelTable of(int[] quanta)
+    {
+        int n = quanta.length;
+        int[] expire = new int[n];
+        int[] unblock = new int[n];
+        for (int i=0; i<n; i++) {
+            expire[i] = Math.max(i - 1, 0);
+            unblock[i] = Math.min(i + 1, n - 1);
+        }
+        return new LevelTable(quanta, expire, unblock);
+    }
+
+    /**
+     * Makes a table like this one, but with aging and boosts.
+     * @param age Longest wait in each level's queue before moving up one level (0 for never).
+     * @param boost Time between boosts of every Queued SimThread to the highest level (0 for never).
+     * @return The new table.
+     */
+    public LevelTable withAging(int[] age, long boost)
+    {
+        return new LevelTable(quanta, expire, unblock, age, boost);
+    }
+
+    /**
+     * @return Number of priority levels (0 to levels()-1).
+     */
+    public int levels() { return quanta.length; }
+
+    /**
+     * @param level A priority level.
+     * @return Time quantum of that level.
+     */
+    public int quantum(int level) { return quanta[level]; }
+
+    /**
+     * @param level A priority level.
+     * @return Level to drop to from that level when the quantum expires.
+     */
+    public int expire(int level) { return expire[level]; }
+
+    /**
+     * @param level A priority level.
+     * @return Level to rise to from that level on returning from the Blocked state.
+     */
+    public int unblock(int level) { return unblock[level]; }
+
+    /**
+     * @param level A priority level.
+     * @return Longest wait in that level's queue before moving up one level (0 for never).
+     */
+    public int age(int level) { return age[level]; }
+
+    /**
+     * @return Time between boosts of every Queued SimThread to the highest level (0 for never).
+     */
+    public long boost() { return boost; }
+
+    /**
+     * Maps any priority onto a level of this table: a priority below 0 is
+     * level 0, and one above the highest level is the highest level.
+     * @param priority A SimThread's priority.
+     * @return The level.
+     */
+    public int level(int priority)
+    {
+        return Math.min(Math.max(priority, 0), quanta.length - 1);
+    }
+
+    /**
+     * Reads a table file.
+     * @param fileName Name of the file.
+     * @return The table.
+     * @throws IOException if the file cannot be read or is not a valid table.
+     */
+    public static LevelTable load(String fileName) throws IOException
+    {
+        List<int[]> rows = new ArrayList<int[]>();
+        long boost = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName),
+                StandardCharsets.UTF_8))) {
+            int line = 0;
+            String s;
+            while ((s = in.readLine()) != null) {
+                line++;
+                s = s.trim();
+                if (s.isEmpty() || s.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    if (s.startsWith("boost=")) {
+                        boost = Long.parseLong(s.substring(6).trim());
+                        continue;
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(fileName + ", line " + line + ": not a number: " + e.getMessage());
+                }
+                String[] fields = s.split(",");
+                if (fields.length != 1 && fields.length != 3 && fields.length != 4) {
+                    throw new IOException(fileName + ", line " + line + ": expected quantum[,expire,unblock[,age]]");
+                }
+                int[] row = new int[fields.length];
+                try {
+                    for (int i=0; i<fields.length; i++) {
+                        row[i] = Integer.parseInt(fields[i].trim());
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(fileName + ", line " + line + ": not a number: " + e.getMessage());
+                }
+                rows.add(row);
+            }
+        }
+        int n = rows.size();
+        int[] quanta = new int[n];
+        int[] expire = new int[n];
+        int[] unblock = new int[n];
+        int[] age = new int[n];
+        for (int i=0; i<n; i++) {
+            int[] row = rows.get(i);
+            quanta[i] = row[0];
+            expire[i] = row.length > 1 ? row[1] : Math.max(i - 1, 0);
+            unblock[i] = row.length > 1 ? row[2] : Math.min(i + 1, n - 1);
+            age[i] = row.length > 3 ? row[3] : 0;
+        }
+        try {
+            return new LevelTable(quanta, expire, unblock, age, boost);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(fileName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a daemon thread that gives the simulation a new table each time
+     * the table file changes.  A file that cannot be read is reported, and
+     * the simulation keeps its current table.
+     * @param os The simulation.
+     * @param fileName Name of the table file (read once at the start).
+     * @param interval How often to look at the file, in milliseconds.
+     * @return The thread (interrupt it to stop watching).
+     */
+    public static Thread watch(final OS os, final String fileName, final long interval)
+    {
+        Thread t = new Thread("LevelTable " + fileName) {
+            public void run() {
+                File file = new File(fileName);
+                long modified = Long.MIN_VALUE;
+                while (!isInterrupted()) {
+                    long m = file.lastModified();
+                    if (m != modified) {
+                        modified = m;
+                        try {
+                            os.setLevels(load(fileName));
+                        } catch (IOException e) {
+                            System.err.println("Level table not reloaded: " + e.getMessage());
+                        }
+                    }
+                    try {
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        for (int i=0; i<quanta.length; i++) {
+            s.append(i > 0 ? " " : "").append(quanta[i]).append('/').append(expire[i]).append('/').append(unblock[i]);
+            if (age[i] > 0) {
+                s.append('/').append(age[i]);
+            }
+        }
+        return s.append(boost > 0 ? " boost=" + boost : "").toString();
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Writes the simulation's log file on a background thread, so the simulation
+ * never waits for the disk.
+ *
+ * Messages are handed over through a bounded ring buffer.  The writer thread
+ * takes everything waiting in the buffer at once and writes it to a
+ * FileChannel as one batch.  If the simulation gets a whole buffer ahead of
+ * the disk, append() waits for room rather than dropping messages.  How
+ * often the file is forced out to the disk is set by the Flush policy.
+ * A shutdown hook closes a log that is still open when the program exits;
+ * close() removes it again.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class LogWriter implements Runnable {
+
+    /**
+     * When the log file is forced out to the disk.
+     */
+    public static enum Flush {
+        EVERY_BATCH,    // After every batch of messages (safest, slowest).
+        PERIODIC,       // At most once per FLUSH_INTERVAL milliseconds.
+        ON_CLOSE        // Only when the log is closed; the operating system decides the rest.
+    };
+
+    public static final int DEFAULT_CAPACITY = 8192;    // Default number of messages the buffer holds.
+    public static final long FLUSH_INTERVAL = 1000;     // Time (in milliseconds) between periodic flushes.
+
+    private String[] ring;              // Messages waiting to be written.
+    private int head;                   // Index of oldest waiting message.
+    private int count;                  // Number of waiting messages.
+    private String[] batch;             // Messages being written (writer thread only).
+    private ByteBuffer buffer;          // Bytes being written (writer thread only).
+    private FileChannel channel;        // The log file.
+    private Flush flush;                // Flush policy.
+    private long lastForce;             // When the file was last forced to disk.
+    private boolean dirty;              // Written to since it was last forced? (writer thread only)
+    private boolean closed;             // Has close() been called?
+    private volatile IOException failure;   // Why writing failed (null if it hasn't).
+    private ReentrantLock lock;
+    private Condition notEmpty;
+    private Condition notFull;
+    private Thread thread;
+    private Thread hook;                // Closes the log when the program exits.
+
+    /**
+     * Constructor.  Creates (or empties) the log file and starts the writer thread.
+     * @param fileName Name of the log file.
+     * @param flush When the file is forced out to the disk.
+     * @param capacity Number of messages the buffer holds.
+     * @throws IOException if the file cannot be created.
+     */
+    public LogWriter(String fileName, Flush flush, int capacity) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.flush = flush;
+        ring = new String[capacity];
+        batch = new String[capacity];
+        buffer = ByteBuffer.allocateDirect(64 * 1024);
+        head = 0;
+        count = 0;
+        closed = false;
+        lastForce = System.currentTimeMillis();
+        dirty = false;
+        lock = new ReentrantLock();
+        notEmpty = lock.newCondition();
+        notFull = lock.newCondition();
+        thread = new Thread(this, "LogWriter");
+        thread.setDaemon(true);
+        thread.start();
+        hook = new Thread() {
+            public void run() {
+                LogWriter.this.close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    /**
+     * Adds a message (one line) to the log.  Waits if the buffer is full.
+     * Messages appended after the log is closed or has failed are ignored.
+     * @param msg The message.
+     */
+    public void append(String msg)
+    {
+        lock.lock();
+        try {
+            while (count == ring.length && !closed && failure == null) {
+                notFull.awaitUninterruptibly();
+            }
+            if (closed || failure != null) {
+                return;
+            }
+            ring[(head + count) % ring.length] = msg;
+            if (count++ == 0) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the reason the log could not be written, if it couldn't.
+     * @return The error, or null if writing has not failed.
+     */
+    public IOException getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Writes everything still in the buffer, forces the file to disk and
+     * closes it.  After a failure, just lets go of the file.
+     */
+    public void close()
+    {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (Thread.currentThread() != hook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // The program is exiting already; the hook will find the log closed.
+            }
+        }
+    }
+
+    /**
+     * Method executed by the writer thread.
+     * Repeatedly takes all waiting messages and writes them as one batch.
+     */
+    public void run()
+    {
+        try {
+            while (true) {
+                int n;
+                boolean last;
+                lock.lock();
+                try {
+                    while (count == 0 && !closed) {
+                        if (flush == Flush.PERIODIC) {
+                            notEmpty.await(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+                            break;
+                        }
+                        notEmpty.await();
+                    }
+                    n = count;
+                    for (int i=0; i<n; i++) {
+                        int slot = (head + i) % ring.length;
+                        batch[i] = ring[slot];
+                        ring[slot] = null;
+                    }
+                    head = (head + n) % ring.length;
+                    count = 0;
+                    last = closed;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                write(n);
+                if (last) {
+                    channel.force(false);
+                    channel.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new IOException("Log writer interrupted", e);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already failed; nothing more to report.
+        }
+        lock.lock();
+        try {
+            notFull.signalAll();    // Nobody is going to make room now.
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes a batch of messages and forces the file out if the policy says so.
+    private void write(int n) throws IOException
+    {
+        for (int i=0; i<n; i++) {
+            byte[] bytes = batch[i].getBytes(StandardCharsets.UTF_8);
+            batch[i] = null;
+            if (buffer.remaining() < bytes.length + 1) {
+                drain();
+            }
+            if (bytes.length + 1 > buffer.capacity()) {
+                ByteBuffer big = ByteBuffer.wrap(bytes);
+                while (big.hasRemaining()) {
+                    channel.write(big);
+                }
+            } else {
+                buffer.put(bytes);
+            }
+            buffer.put((byte) '\n');
+        }
+        drain();
+        dirty |= n > 0;
+        long now = System.currentTimeMillis();
+        if (dirty && (flush == Flush.EVERY_BATCH
+                || (flush == Flush.PERIODIC && now - lastForce >= FLUSH_INTERVAL))) {
+            channel.force(false);
+            lastForce = now;
+            dirty = false;
+        }
+    }
+
+    // Writes out the bytes in the buffer.
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Scheduling metrics of a simulation: histograms of turnaround, response and
+ * waiting time, the number of context switches, and the idle time of each
+ * core (from which CPU utilization follows).
+ *
+ * The OS reports every state change and every time a core goes idle or
+ * gets a SimThread.  The metrics are read from other threads (such as the
+ * GUI's), so every method is synchronized, and the histograms handed out
+ * are copies.
+ *
+ *   turnaround - time from creation to completion
+ *   response   - time from creation to first running
+ *   waiting    - total time spent Queued, over the SimThread's life
+ */
+public class Metrics {
+
+    private Histogram turnaround;   // Of the SimThreads that finished.
+    private Histogram response;     // Of the SimThreads that have run.
+    private Histogram waiting;      // Of the SimThreads that finished.
+    private long contextSwitches;   // Number of times a SimThread was put in the Running state.
+    private long[] idleTicks;       // Finished idle time of each core.
+    private long[] idleSince;       // Time at which each core went idle (-1 if busy).
+    private long now;               // Latest time reported.
+
+    /**
+     * Constructor.
+     * @param numCores Number of CPU cores (all idle at time 0).
+     */
+    public Metrics(int numCores)
+    {
+        turnaround = new Histogram();
+        response = new Histogram();
+        waiting = new Histogram();
+        contextSwitches = 0;
+        idleTicks = new long[numCores];
+        idleSince = new long[numCores];
+        now = 0;
+    }
+
+    /**
+     * Called by the OS when a SimThread has changed state.
+     * @param t The SimThread (already in its new state).
+     * @param now Current time.
+     */
+    public synchronized void stateChanged(SimThread t, long now)
+    {
+        this.now = now;
+        switch(t.getState()) {
+        case RUNNING:
+            contextSwitches++;
+            if (t.getDispatches() == 1) {
+                response.record(t.getResponseTime());
+            }
+            break;
+        case DONE:
+            turnaround.record(now - t.getArrivalTime());
+            waiting.record(t.getQueueTime(now));
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Called by the OS when a core's Running SimThread changes.
+     * @param core Core number.
+     * @param busy false if the core is now idle.
+     * @param now Current time.
+     */
+    public synchronized void coreChanged(int core, boolean busy, long now)
+    {
+        this.now = now;
+        if (busy && idleSince[core] >= 0) {
+            idleTicks[core] += now - idleSince[core];
+            idleSince[core] = -1;
+        } else if (!busy && idleSince[core] < 0) {
+            idleSince[core] = now;
+        }
+    }
+
+    /**
+     * Called when time advances, so idle time and utilization are up to date.
+     * @param now Current time.
+     */
+    public synchronized void setTime(long now)
+    {
+        this.now = now;
+    }
+
+    /**
+     * @return Copy of the turnaround time histogram.
+     */
+    public synchronized Histogram getTurnaround() { return new Histogram(turnaround); }
+
+    /**
+     * @return Copy of the response time histogram.
+     */
+    public synchronized Histogram getResponse() { return new Histogram(response); }
+
+    /**
+     * @return Copy of the waiting time histogram.
+     */
+    public synchronized Histogram getWaiting() { return new Histogram(waiting); }
+
+    /**
+     * @return Number of context switches (times a SimThread was put in the Running state).
+     */
+    public synchronized long getContextSwitches() { return contextSwitches; }
+
+    /**
+     * @return Latest time reported.
+     */
+    public synchronized long getTime() { return now; }
+
+    /**
+     * Returns the total time a core has been idle.
+     * @param core Core number.
+     * @return Idle time up to the latest time reported.
+     */
+    public synchronized long getIdleTicks(int core)
+    {
+        return idleTicks[core] + (idleSince[core] >= 0 ? now - idleSince[core] : 0);
+    }
+
+    /**
+     * @return Total idle time of all cores.
+     */
+    public synchronized long getIdleTicks()
+    {
+        long idle = 0;
+        for (int i=0; i<idleTicks.length; i++) {
+            idle += getIdleTicks(i);
+        }
+        return idle;
+    }
+
+    /**
+     * @return Fraction of core time spent running SimThreads (0 to 1).
+     */
+    public synchronized double getUtilization()
+    {
+        long total = now * idleTicks.length;
+        return total == 0 ? 0 : 1 - (double) getIdleTicks() / total;
+    }
+
+    /**
+     * Writes the metrics to a snapshot.
+     * @param out The snapshot being written.
+     */
+    synchronized void save(Snapshot out)
+    {
+        out.putLong(now);
+        out.putLong(contextSwitches);
+        for (int i=0; i<idleTicks.length; i++) {
+            out.putLong(idleTicks[i]);
+            out.putLong(idleSince[i]);
+        }
+        turnaround.save(out);
+        response.save(out);
+        waiting.save(out);
+    }
+
+    /**
+     * Replaces the metrics with those written by save (with the same number of cores).
+     * @param in The snapshot being read.
+     */
+    synchronized void restore(Snapshot in)
+    {
+        now = in.getLong();
+        contextSwitches = in.getLong();
+        for (int i=0; i<idleTicks.length; i++) {
+            idleTicks[i] = in.getLong();
+            idleSince[i] = in.getLong();
+        }
+        turnaround.restore(in);
+        response.restore(in);
+        waiting.restore(in);
+    }
+
+    public synchronized String toString()
+    {
+        return "turnaround: " + turnaround + "\n"
+            + "response:   " + response + "\n"
+            + "waiting:    " + waiting + "\n"
+            + "context switches: " + contextSwitches + ", idle ticks: " + getIdleTicks()
+            + ", utilization: " + String.format(java.util.Locale.ROOT, "%.1f%%", 100 * getUtilization());
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * A panel showing a simulation's Metrics while it runs: percentiles of
+ * turnaround, response and waiting time, the number of context switches and
+ * CPU utilization.  The panel redraws itself a few times per second from
+ * copies of the metrics, so it never holds up the simulation.
+ */
+
+import javax.swing.*;
+import java.awt.event.*;
+import java.awt.*;
+
+public class MetricsPanel extends JPanel {
+
+    public static final long serialVersionUID = 1;
+    public static final int REFRESH = 500;      // Milliseconds between redraws.
+
+    private static final String[] COLUMNS = {"", "p50", "p99", "p99.9", "max", "mean"};
+    private static final String[] ROWS = {"Turnaround", "Response", "Waiting"};
+
+    private Metrics metrics;
+    private JLabel[][] cells;                   // Percentile values, by row and column.
+    private JLabel summary;                     // Context switches and utilization.
+
+    /**
+     * Constructor.
+     * @param metrics The metrics to show.
+     */
+    public MetricsPanel(Metrics metrics)
+    {
+        super(new BorderLayout(5, 5));
+        this.metrics = metrics;
+        JPanel grid = new JPanel(new GridLayout(ROWS.length + 1, COLUMNS.length, 5, 2));
+        for (String c : COLUMNS) {
+            grid.add(new JLabel(c, SwingConstants.RIGHT));
+        }
+        cells = new JLabel[ROWS.length][COLUMNS.length - 1];
+        for (int i=0; i<ROWS.length; i++) {
+            grid.add(new JLabel(ROWS[i], SwingConstants.LEFT));
+            for (int j=0; j<cells[i].length; j++) {
+                cells[i][j] = new JLabel("-", SwingConstants.RIGHT);
+                grid.add(cells[i][j]);
+            }
+        }
+        add(grid, BorderLayout.CENTER);
+        summary = new JLabel(" ", SwingConstants.LEFT);
+        add(summary, BorderLayout.SOUTH);
+        setBorder(BorderFactory.createTitledBorder("Metrics"));
+        new Timer(REFRESH, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        }).start();
+    }
+
+    // Copies the latest metrics into the labels (on the event dispatch thread).
+    private void refresh()
+    {
+        Histogram[] h = {metrics.getTurnaround(), metrics.getResponse(), metrics.getWaiting()};
+        for (int i=0; i<h.length; i++) {
+            if (h[i].getCount() > 0) {
+                cells[i][0].setText(Long.toString(h[i].getValueAtPercentile(50)));
+                cells[i][1].setText(Long.toString(h[i].getValueAtPercentile(99)));
+                cells[i][2].setText(Long.toString(h[i].getValueAtPercentile(99.9)));
+                cells[i][3].setText(Long.toString(h[i].getMax()));
+                cells[i][4].setText(String.format("%.1f", h[i].getMean()));
+            }
+        }
+        summary.setText("Context switches: " + metrics.getContextSwitches() + "    CPU utilization: "
+            + String.format("%.1f%%", 100 * metrics.getUtilization()));
+    }
+}
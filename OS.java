@@ -4,101 +4,381 @@
  * but it lets us see what's going on.)
  * 
  * Threads must be created using the createSimThread method.  The simulation starts
- * when the first SimThread is created.
+ * when the first SimThread is created.  SimThreads can also be set to arrive
+ * later, at given simulated times (createSimThreadAt), from a workload trace
+ * (setWorkload) or at random (addArrivals with RandomArrivals).  A headless simulation has no window and
+ * no Clock; it is run to completion as fast as possible with the run method.
+ * 
+ * The simulated computer can have several cores.  Each core has its own
+ * Running SimThread and its own scheduling policy (so its own ready queue and
+ * time quantum).  A SimThread that becomes ready goes to the core it asked
+ * for (see SimThread.setAffinity), else the core it last ran on if that is
+ * as lightly loaded as any, else the least loaded core.  A core that runs out
+ * of work steals a Queued SimThread from the busiest core.  A SimThread that
+ * runs on a different core than the time before pays the migration cost.
  * 
  * @author Adam Fischbach - Widener University
  * @version Fall 2014
  */
 
-import java.util.LinkedList;
 import javax.swing.*;
-import java.io.*;
+import java.io.IOException;
+import java.util.Random;
 
 public class OS {
 
-    public static final int MAX_THREADS = 10;  // Maximum number of threads allowed.
     public static final String FILE_NAME = "thschedlog.txt";	// Name of output file
+    public static final int DEFAULT_MIGRATION_COST = 1;         // Run time lost by moving to another core
+    public static final long DIGEST_START = 0xCBF29CE484222325L; // Run digest before any state change
     
-    private LinkedList<SimThread> threadList;   // List of all SimThreads.
-    private SimThread running;                  // The SimThread in the "Running" state.
-    private int numThreads;                     // Number of SimThreads created.
-    private Clock clock;                        // Reference to the Clock object.
-    private int quantum;                        // Length of time quantum in seconds.
-    private boolean preempt;                    // Is preemption turned on?
-    private Scheduler scheduler;                // Reference to Scheduler object.
-    private GUI gui;							// Reference to the GUI object
-    private boolean stopped;					// Is simulation stopped?
-    private FileWriter file;					// Output file 
+    private ThreadTable threadList;             // All live SimThreads, by ID.
+    private ThreadStore store;                  // Counters of all SimThreads, as arrays (null if not used).
+    private Core[] cores;                       // The simulated CPU cores.
+    private Core core;                          // The core being scheduled (policies' OS calls act on it).
+    private int migrationCost;                  // Extra run time for a SimThread that moves to another core.
+    private int nextID;                         // ID of the next SimThread created (IDs are never reused).
+    private long seed;                          // Seed of rand, so the run can be repeated.
+    private Random rand;                        // Random CPU burst and wait times of new SimThreads.
+    private long digest;                        // Hash of every state change so far, in order.
+    private long events;                        // Number of state changes so far.
+    private ArrivalQueue arrivals;              // Sources of SimThreads still to arrive.
+    private volatile Clock clock;               // Reference to the Clock object.
+    private volatile Thread simThread;          // The Clock, or the thread inside run() (null if none).
+    private SimListener listener;				// Told about every change (usually the GUI)
+    private volatile boolean stopped;			// Is simulation stopped? (As last asked for.)
+    private boolean terminalOut;				// Is text output to the terminal on?
+    private boolean fileOut;					// Is text output to the log file on?
+    private TraceWriter trace;					// Binary trace of state changes (null if off)
+    private Metrics metrics;                    // Turnaround, response and waiting times, utilization
+    private LogWriter log;						// Output file (written in the background)
+    private LogWriter.Flush logFlush;			// When the output file is forced to disk
+    private SimEngine engine;                   // Advances time (driven by the Clock, or by run() if headless).
+    private boolean headless;                   // Is the simulation run without a window or Clock?
+    private volatile SimStatus status;          // Latest picture of the simulation, for other threads.
+    private volatile boolean statusWanted;      // Has status been read since it was published?
         
     /**
      * Constructor.
      */
     public OS()
     {
-        threadList = new LinkedList<SimThread>();
-        running = null;
-        numThreads = 0;
+        this(false);
+    }
+    
+    /**
+     * Constructor.
+     * @param headless If true, the simulation has no window and is driven by run() instead of the Clock.
+     */
+    public OS(boolean headless)
+    {
+        this(headless ? new SimAdapter() : null);
+    }
+    
+    /**
+     * Constructor for a headless simulation that reports to the given listener.
+     * The simulation is driven by run() instead of the Clock.
+     * @param listener Told about every change to the simulation (null for a GUI simulation).
+     */
+    public OS(SimListener listener)
+    {
+        this(listener, SchedulingPolicy.Kind.MLFQ);
+    }
+    
+    /**
+     * Constructor.
+     * @param listener Told about every change to the simulation.  If null, the
+     *                 simulation has a window and is driven by the Clock; otherwise
+     *                 it is headless and driven by run().
+     * @param policy The scheduling algorithm.
+     */
+    public OS(SimListener listener, SchedulingPolicy.Kind policy)
+    {
+        this(listener, policy, 1);
+    }
+    
+    /**
+     * Constructor.
+     * @param listener Told about every change to the simulation.  If null, the
+     *                 simulation has a window and is driven by the Clock; otherwise
+     *                 it is headless and driven by run().
+     * @param policy Makes the scheduling algorithm (each core gets its own).
+     * @param numCores Number of CPU cores.
+     */
+    public OS(SimListener listener, SchedulingPolicy.Factory policy, int numCores)
+    {
+        if (numCores < 1) {
+            throw new IllegalArgumentException("numCores: " + numCores);
+        }
+        threadList = new ThreadTable();
+        store = null;
+        nextID = 0;
+        setSeed(new Random().nextLong());
+        digest = DIGEST_START;
+        events = 0;
+        arrivals = new ArrivalQueue();
         clock = null;
-        quantum = 1;
-        gui = new GUI(this);
-        scheduler = new Scheduler(this);
+        cores = new Core[numCores];
+        for (int i=0; i<numCores; i++) {
+            cores[i] = new Core(i);
+        }
+        migrationCost = DEFAULT_MIGRATION_COST;
+        metrics = new Metrics(numCores);
+        headless = listener != null;
+        this.listener = headless ? listener : new GUI(this);
+        engine = new SimEngine(this, this.listener);
+        for (int i=0; i<numCores; i++) {
+            core = cores[i];
+            core.setPolicy(policy.create(this));
+        }
+        core = cores[0];
         stopped = true;
+        logFlush = LogWriter.Flush.PERIODIC;
+        publish();
+        statusWanted = true;
     }
     
     /**
-     * Turns preemption on and off.
+     * Turns preemption on and off for the core being scheduled.
      * @param tf Is preemption on?
      */
     public void setPreempt(boolean tf)
     {
-        preempt = tf;
-        gui.updatePreemption(tf);
+        core.setPreempt(tf);
+        listener.updatePreemption(tf);
     }
     
     /**
-     * Returns true if preemption is on.
+     * Returns true if preemption is on for the core being scheduled.
      * @return true is preemption is on.
      */
     public boolean getPreempt()
     {
-        return preempt;
+        return core.getPreempt();
     }
     
     /**
-     * Changes the time quantum.
+     * Changes the time quantum of the core being scheduled, for the time
+     * slices that start from now on (including one that starts in this time
+     * unit, so a policy may set the quantum just before or after it puts a
+     * SimThread in the Running state).
      * @param quantum Time quantum.
      */
     public void setQuantum(int quantum)
     {
-        this.quantum = quantum;
-        gui.updateQuantum(quantum);
+        core.setQuantum(quantum, engine.getTime());
+        listener.updateQuantum(core.getID(), quantum);
     }
     
     /**
-     * Returns the current time quantum.
+     * Returns the time quantum of the core being scheduled.
      * @return time quantum.
      */
     public int getQuantum()
     {
-        return quantum;
+        return core.getQuantum();
+    }
+    
+    /**
+     * Returns the simulated CPU cores.
+     * @return The cores, by core number.
+     */
+    public Core[] getCores()
+    {
+        return cores;
+    }
+    
+    /**
+     * Returns the simulation's scheduling metrics.
+     * @return Turnaround, response and waiting times, context switches and idle time.
+     */
+    public Metrics getMetrics()
+    {
+        return metrics;
     }
     
     /**
-     * Returns the list of all SimThreads.
-     * @return List of all SimThreads.
+     * Sets the extra run time a SimThread pays when it runs on a different
+     * core than the time before (its cache is cold there).
+     * @param cost Extra run time (0 for free migration).
      */
-    public LinkedList<SimThread> getThreadList()
+    public void setMigrationCost(int cost)
+    {
+        migrationCost = cost;
+    }
+    
+    /**
+     * Returns the extra run time a SimThread pays for moving to another core.
+     * @return Migration cost.
+     */
+    public int getMigrationCost()
+    {
+        return migrationCost;
+    }
+    
+    /**
+     * Returns the current simulated time.
+     * @return Number of time units simulated so far.
+     */
+    public long getTime()
+    {
+        return engine.getTime();
+    }
+    
+    /**
+     * Returns the table of all live SimThreads.
+     * @return Table of all SimThreads that are not done.
+     */
+    public ThreadTable getThreadList()
     {
         return threadList;
     }
+
+    /**
+     * Keeps the counters of the SimThreads created from now on in a ThreadStore
+     * (a structure of arrays), for workloads that scan them.  Must be called
+     * before the first SimThread is created.
+     * @param capacity Number of SimThreads to make room for at first.
+     */
+    public void useThreadStore(int capacity)
+    {
+        if (nextID > 0) {
+            throw new IllegalStateException("SimThreads have already been created");
+        }
+        store = new ThreadStore(capacity);
+    }
+    
+    /**
+     * Returns the counters of every SimThread created, live or done, as arrays.
+     * @return The simulation's ThreadStore (null if useThreadStore wasn't called).
+     */
+    public ThreadStore getThreadStore()
+    {
+        return store;
+    }
        
     /**
-     * Returns the currently running SimThread.
+     * Takes a snapshot of the whole simulation (see Snapshot), to be written
+     * to a file or restored into other simulations.  Take it between calls
+     * to run, or while a GUI simulation is stopped.  SimThreads still to
+     * arrive (see addArrivals) are not part of the snapshot.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot()
+    {
+        Snapshot out = new Snapshot();
+        out.putInt(cores.length);
+        out.putInt(nextID);
+        out.putInt(migrationCost);
+        out.putRandom(rand);
+        out.putLong(digest);
+        out.putLong(events);
+        out.putInt(threadList.size());
+        for (int i=0; i<threadList.capacity(); i++) {
+            SimThread st = threadList.at(i);
+            if (st != null) {
+                st.save(out);
+            }
+        }
+        for (Core c : cores) {
+            out.putThread(c.getRunning());
+            out.putInt(c.getQuantum());
+            out.putBoolean(c.getPreempt());
+            out.putLong(c.getSliceStart());
+            out.putLong(c.getSliceEnd());
+            out.putLong(c.getMigrations());
+            out.putLong(c.getSteals());
+            out.putString(c.getPolicy().getClass().getName());
+            int mark = out.startBlock();
+            c.getPolicy().save(out);
+            out.endBlock(mark);
+        }
+        engine.save(out);
+        metrics.save(out);
+        out.seal();
+        return out;
+    }
+
+    /**
+     * Carries on the simulation from a snapshot, instead of creating
+     * SimThreads.  The simulation must have as many cores as the one the
+     * snapshot was taken of, and no SimThreads yet.  If a core's policy is
+     * not the one in the snapshot, its Queued SimThreads are enqueued afresh
+     * (as new SimThreads) and it keeps its own time quantum.
+     * @param snapshot The snapshot (it is not changed, so it can be restored again).
+     * @throws IllegalArgumentException if the snapshot is truncated or corrupt, or has another number of cores.
+     */
+    public void restore(Snapshot snapshot)
+    {
+        if (nextID > 0) {
+            throw new IllegalStateException("SimThreads have already been created");
+        }
+        Snapshot in = snapshot.reader(threadList);
+        if (!in.hasHeader()) {
+            throw new IllegalArgumentException("Not a snapshot");
+        }
+        int numCores = in.getInt();
+        if (numCores != cores.length) {
+            throw new IllegalArgumentException("Snapshot has " + numCores + " cores, not " + cores.length);
+        }
+        nextID = in.getInt();
+        migrationCost = in.getInt();
+        rand = in.getRandom();
+        digest = in.getLong();
+        events = in.getLong();
+        for (int n = in.getInt(); n > 0; n--) {
+            threadList.add(SimThread.restore(in, store, listener));
+        }
+        boolean requeue = false;
+        for (Core c : cores) {
+            core = c;
+            c.setRunning(in.getThread());
+            int quantum = in.getInt();
+            boolean preempt = in.getBoolean();
+            long sliceStart = in.getLong();
+            long sliceEnd = in.getLong();
+            c.setCounts(in.getLong(), in.getLong());
+            String policy = in.getString();
+            int length = in.getBlockLength();
+            if (policy.equals(c.getPolicy().getClass().getName())) {
+                setQuantum(quantum);
+                setPreempt(preempt);
+                c.getPolicy().restore(in);
+            } else {
+                in.skip(length);
+                requeue = true;
+            }
+            c.setSlice(sliceStart, sliceEnd);
+        }
+        engine.restore(in);
+        metrics.restore(in);
+        if (requeue) {
+            // Listed first: enqueueing may preempt a Running SimThread, which is then Queued too.
+            SimThread[] queued = new SimThread[threadList.size()];
+            int n = 0;
+            for (int i=0; i<threadList.capacity(); i++) {
+                SimThread st = threadList.at(i);
+                if (st != null && st.getState() == SimThread.State.QUEUED) {
+                    queued[n++] = st;
+                }
+            }
+            for (int i=0; i<n; i++) {
+                core = place(queued[i]);
+                core.getPolicy().enqueue(queued[i], 0);
+            }
+        }
+        core = cores[0];
+        if (!threadList.isEmpty()) {
+            startClock();
+        }
+    }
+
+    /**
+     * Returns the SimThread running on the core being scheduled.
      * @return Current SimThread in Running state.
      */
     public SimThread getRunning()
     {
-        return running;
+        return core.getRunning();
     }
     
     /**
@@ -110,11 +390,11 @@ public class OS {
     public void preemptRunningThread(SimThread st)
     {
         if(st.getState() == SimThread.State.QUEUED) {
-            SimThread oldRunning = running;
+            SimThread oldRunning = core.getRunning();
             setRunning(st);
-            oldRunning.setState(SimThread.State.QUEUED);
-            scheduler.enqueue(oldRunning, 3);
-            print("Thread " + oldRunning.getID() + " has been PREEMPTED!");
+            changeState(oldRunning, SimThread.State.QUEUED, TraceWriter.PREEMPTED);
+            core.getPolicy().enqueue(oldRunning, 3);
+            print("Thread ", oldRunning.getID(), " has been PREEMPTED!");
         } else {
             throw new IllegalThreadStateException("SimThread: " + st.getState().toString());
         }
@@ -128,10 +408,11 @@ public class OS {
     public void doneWaiting(SimThread t)
     {
         if (t.getState() == SimThread.State.BLOCKED) {
-            print("Thread " + t.getID() + ": DONE WAITING!");
-            t.setState(SimThread.State.QUEUED);
-            print("\tOS: Thread " + t.getID() + " back in queue!");
-            scheduler.enqueue(t, 1);
+            print("Thread ", t.getID(), ": DONE WAITING!");
+            changeState(t, SimThread.State.QUEUED, TraceWriter.UNBLOCKED);
+            print("\tOS: Thread ", t.getID(), " back in queue!");
+            core = place(t);
+            core.getPolicy().enqueue(t, 1);
         } else {
             throw new IllegalThreadStateException("SimThread: " + t.getState().toString());
         }
@@ -149,43 +430,337 @@ public class OS {
     {
         if (t.getState() == SimThread.State.RUNNING) {
             if(t.getCycles() == 0) {
-                t.setState(SimThread.State.DONE);
-                print("Thread " + t.getID() + " is ALL DONE!!!");
+                changeState(t, SimThread.State.DONE, TraceWriter.EXITED);
+                print("Thread ", t.getID(), " is ALL DONE!!!");
                 threadList.remove(t);
-                numThreads--;
             } else {
-                print("Thread " + t.getID() + ": WAITING!");
-                t.setState(SimThread.State.BLOCKED);
+                print("Thread ", t.getID(), ": WAITING!");
+                changeState(t, SimThread.State.BLOCKED, TraceWriter.BLOCKED);
             }
-            scheduler.scheduleThread();
+            schedule(cores[t.getCore()]);
         } else {
             throw new IllegalThreadStateException("SimThread: " + t.getState().toString());
         }
     }
  
     /**
-     * When preemption is on, the Clock calls this method when the current
-     * Running SimThread exceeds the time quantum.  The SimThread is
+     * When preemption is on, the Clock calls this method when the
+     * Running SimThread of a core exceeds the time quantum.  The SimThread is
      * returned to the Queued state and a new SimThread is scheduled.
+     * @param c The core whose time quantum is up.
      */
-    public void interrupt()
+    public void interrupt(Core c)
     {
         print("<<<=== INTERRUPT ===>>>");
+        core = c;
+        SimThread running = c.getRunning();
         if (running != null) {
-            running.setState(SimThread.State.QUEUED);
-            scheduler.enqueue(running, 2);
-            print("Thread " + running.getID() + " has been PREEMPTED!");
+            changeState(running, SimThread.State.QUEUED, TraceWriter.QUANTUM);
+            c.getPolicy().enqueue(running, 2);
+            print("Thread ", running.getID(), " has been PREEMPTED!");
+        }
+        schedule(c);
+    }
+    
+    /**
+     * Gives every idle core a chance to steal work from the busiest core.
+     * The Clock calls this once per time unit, after the cores have run.
+     */
+    public void balance()
+    {
+        if (cores.length > 1) {
+            for (Core c : cores) {
+                if (c.getRunning() == null) {
+                    steal(c);
+                }
+            }
+        }
+    }
+    
+    // Lets a core's policy pick its next SimThread, and steals one if it has none.
+    private void schedule(Core c)
+    {
+        core = c;
+        c.getPolicy().scheduleThread();
+        if (c.getRunning() == null && cores.length > 1) {
+            steal(c);
+        }
+    }
+    
+    // Moves a Queued SimThread from the busiest core to an idle one.
+    private void steal(Core idle)
+    {
+        Core victim = null;
+        for (Core c : cores) {
+            if (c != idle && c.getPolicy().size() > 0 && (victim == null || c.load() > victim.load())) {
+                victim = c;
+            }
+        }
+        if (victim == null) {
+            return;
+        }
+        SimThread st = victim.getPolicy().steal();
+        if (st != null) {
+            idle.stole();
+            if (isLogging()) {
+                print("\tOS: CPU " + idle.getID() + " stole Thread " + st.getID() + " from CPU " + victim.getID());
+            }
+            core = idle;
+            idle.getPolicy().enqueue(st, 0);
+        }
+    }
+    
+    // Chooses the core whose ready queue a SimThread joins when it becomes ready.
+    private Core place(SimThread st)
+    {
+        if (cores.length == 1) {
+            return cores[0];
+        }
+        int affinity = st.getAffinity();
+        if (affinity >= 0 && affinity < cores.length) {
+            return cores[affinity];
+        }
+        Core best = cores[0];
+        int bestLoad = best.load();
+        for (int i=1; i<cores.length; i++) {
+            int load = cores[i].load();
+            if (load < bestLoad) {
+                best = cores[i];
+                bestLoad = load;
+            }
+        }
+        int last = st.getCore();
+        if (last >= 0 && cores[last].load() <= bestLoad) {
+            return cores[last];                 // Its cache is still warm there.
+        }
+        return best;
+    }
+    
+    /**
+     * Hands a command to the simulation thread, which runs it before the next
+     * tick.  This is how other threads change a running simulation: only the
+     * simulation thread (the Clock, or the caller of run) touches its state.
+     * The methods that create SimThreads or change the policy post
+     * themselves when they are called from another thread while the
+     * simulation is running (on the Clock, or in a call to run).
+     * @param command The command.
+     */
+    public void post(Runnable command)
+    {
+        Clock c = clock;
+        if (c != null) {
+            c.post(command);
+        } else {
+            engine.post(command);       // Run by the next call to run().
+        }
+    }
+    
+    /**
+     * Runs a command on the simulation thread: at once if called on it, or if
+     * no simulation is running, and otherwise posted (see post).  A posted
+     * command runs later, so this may return before the command has run.  A
+     * caller that needs the result must wait for it itself, as SimServer
+     * does by passing a FutureTask and waiting on that.
+     * @param command The command.
+     */
+    public void execute(Runnable command)
+    {
+        if (elsewhere()) {
+            post(command);
+        } else {
+            command.run();
         }
-        scheduler.scheduleThread();
+    }
+    
+    // Is the simulation running on another thread than this one (so a change must be posted)?
+    private boolean elsewhere()
+    {
+        Thread t = simThread;
+        return t != null && t != Thread.currentThread();
+    }
+    
+    /**
+     * Returns the latest picture of the simulation.  Any thread may call this;
+     * the simulation thread publishes a new picture after each tick of the
+     * Clock and after running commands, and while a headless simulation runs,
+     * every so often as long as somebody reads it.  Called on the simulation
+     * thread, or while no simulation is running, the picture is up to date.
+     * @return The latest status.
+     */
+    public SimStatus getStatus()
+    {
+        if (!elsewhere() && clock == null) {
+            publish();
+        }
+        statusWanted = true;
+        return status;
+    }
+    
+    /**
+     * Publishes a new status (simulation thread only).
+     */
+    void publish()
+    {
+        int[] running = new int[cores.length];
+        int[] quantum = new int[cores.length];
+        int queued = 0;
+        int busy = 0;
+        for (int i=0; i<cores.length; i++) {
+            SimThread st = cores[i].getRunning();
+            running[i] = st == null ? -1 : st.getID();
+            quantum[i] = cores[i].getQuantum();
+            queued += cores[i].getPolicy().size();
+            busy += st == null ? 0 : 1;
+        }
+        int live = threadList.size();
+        statusWanted = false;
+        status = new SimStatus(engine.getTime(), stopped, nextID, nextID - live, queued,
+            live - queued - busy, running, quantum);
+    }
+    
+    /**
+     * Publishes a new status if the last one has been read (simulation thread only).
+     */
+    void publishIfWanted()
+    {
+        if (statusWanted) {
+            publish();
+        }
+    }
+    
+    /**
+     * Switches every core to another scheduling policy.  The Queued SimThreads
+     * move to the new policies' ready queues, and the Running SimThreads keep
+     * running.  Called from another thread while the simulation is running,
+     * the change is posted and takes effect before the next tick.
+     * @param policy Makes the new scheduling algorithm (each core gets its own).
+     */
+    public void setPolicy(final SchedulingPolicy.Factory policy)
+    {
+        if (elsewhere()) {
+            post(new Runnable() {
+                public void run() {
+                    setPolicy(policy);
+                }
+            });
+            return;
+        }
+        for (Core c : cores) {
+            core = c;
+            SchedulingPolicy old = c.getPolicy();
+            SimThread[] queued = new SimThread[old.size()];
+            for (int i=queued.length-1; i>=0; i--) {
+                queued[i] = old.steal();    // Gives up the thread it would miss least first.
+            }
+            c.setPolicy(policy.create(this));
+            for (SimThread st : queued) {
+                c.getPolicy().enqueue(st, 0);
+            }
+        }
+        core = cores[0];
+    }
+    
+    /**
+     * Gives every core that uses the multilevel feedback queue (Scheduler)
+     * another table of priority levels.  Called from another thread while
+     * the simulation is running, the change is posted and takes effect
+     * before the next tick, without stopping the simulation.
+     * @param levels The new priority levels.
+     */
+    public void setLevels(final LevelTable levels)
+    {
+        if (elsewhere()) {
+            post(new Runnable() {
+                public void run() {
+                    setLevels(levels);
+                }
+            });
+            return;
+        }
+        for (Core c : cores) {
+            if (c.getPolicy() instanceof Scheduler) {
+                core = c;
+                ((Scheduler) c.getPolicy()).setLevels(levels);
+            }
+        }
+        core = cores[0];
+    }
+    
+    /**
+     * Seeds the random CPU burst and wait times of the SimThreads created from
+     * now on, so a run can be repeated.  Each OS has its own generator, so
+     * simulations running side by side don't share one.  An OS starts with
+     * a seed of its own (see getSeed).
+     * @param seed The seed.
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+        rand = new Random(seed);
+    }
+    
+    /**
+     * @return The last seed given to setSeed, or the one the OS picked itself:
+     *         set it on another OS to repeat this run.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+    
+    /**
+     * Returns a hash of every SimThread state change so far: the time, the
+     * SimThread, the old and new states and the reason, in order.  Two runs
+     * with the same digest made the same scheduling decisions at the same
+     * times (see RunVerifier to find where two runs part).
+     * @return The run digest.
+     */
+    public long getDigest()
+    {
+        return digest;
+    }
+    
+    /**
+     * @return Number of SimThread state changes so far (the events in the digest).
+     */
+    public long getEvents()
+    {
+        return events;
+    }
+    
+    /**
+     * Adds one state change to a run digest.
+     * @param digest The digest so far.
+     * @param time Time of the change.
+     * @param id SimThread's ID.
+     * @param from Old state.
+     * @param to New state.
+     * @param reason Why the state changed (TraceWriter.NEW, ...).
+     * @return The new digest.
+     */
+    public static long digest(long digest, long time, int id, SimThread.State from, SimThread.State to, int reason)
+    {
+        long v = time * 0x9E3779B97F4A7C15L + ((long) id << 8 | from.ordinal() << 6 | to.ordinal() << 4 | reason);
+        v = (v ^ (v >>> 33)) * 0xFF51AFD7ED558CCDL;
+        v ^= v >>> 33;
+        return (digest ^ v) * 0x100000001B3L;
     }
     
     /**
      * Create a new SimThread with random CPU burst and wait times.
      * @param priority The new SimThread's priority.
      */
-    public void createSimThread(int priority)
+    public void createSimThread(final int priority)
     {
-        startSimThread(new SimThread(numThreads, gui, priority));
+        if (elsewhere()) {
+            post(new Runnable() {
+                public void run() {
+                    createSimThread(priority);
+                }
+            });
+            return;
+        }
+        startSimThread(new SimThread(store, nextID++, listener, rand, priority));
     }
     
     /**
@@ -195,9 +770,121 @@ public class OS {
      * @param priority SimThread's priority.
      * @param cycles The number of times SimThread must cycle through all three states.
      */
-    public void createSimThread(int burst, int wait, int priority, int cycles)
+    public void createSimThread(final int burst, final int wait, final int priority, final int cycles)
+    {
+        if (elsewhere()) {
+            post(new Runnable() {
+                public void run() {
+                    createSimThread(burst, wait, priority, cycles);
+                }
+            });
+            return;
+        }
+        startSimThread(new SimThread(store, nextID++, listener, burst, wait, priority, cycles));
+    }
+    
+    /**
+     * Create a new SimThread whose cycles each have their own CPU burst and wait time.
+     * @param bursts CPU burst of each cycle (one per cycle).
+     * @param waits Wait time after each CPU burst but the last.
+     * @param priority SimThread's priority.
+     */
+    public void createSimThread(final int[] bursts, final int[] waits, final int priority)
+    {
+        if (elsewhere()) {
+            post(new Runnable() {
+                public void run() {
+                    createSimThread(bursts, waits, priority);
+                }
+            });
+            return;
+        }
+        startSimThread(new SimThread(store, nextID++, listener, bursts, waits, priority));
+    }
+    
+    /**
+     * Create a new SimThread with the given properties when the simulation
+     * reaches the given time (at once if it is not in the future).
+     * @param tick Arrival time.
+     * @param burst Length of CPU burst.
+     * @param wait Length of wait time.
+     * @param priority SimThread's priority.
+     * @param cycles The number of times SimThread must cycle through all three states.
+     */
+    public void createSimThreadAt(final long tick, final int burst, final int wait, final int priority, final int cycles)
+    {
+        addArrivals(new ArrivalSource() {
+            private boolean arrived = false;
+            public long nextArrival() { return arrived ? Long.MAX_VALUE : tick; }
+            public void arrive(OS os) {
+                arrived = true;
+                os.createSimThread(burst, wait, priority, cycles);
+            }
+        });
+    }
+    
+    /**
+     * Adds a source of SimThreads that arrive as the simulation goes (such
+     * as RandomArrivals, or a Workload).  SimThreads due by the current time
+     * are created at once.
+     * @param src The source.
+     */
+    public void addArrivals(final ArrivalSource src)
+    {
+        if (elsewhere()) {
+            post(new Runnable() {
+                public void run() {
+                    addArrivals(src);
+                }
+            });
+            return;
+        }
+        arrivals.add(src);
+        arrive(engine.getTime());
+        startClock();
+    }
+    
+    /**
+     * Replays a workload trace: each SimThread in it is created when the
+     * simulation reaches its arrival time.  The trace is read as the
+     * simulation goes, one SimThread ahead.
+     * @param w The trace (closed when it has been read to the end).
+     * @throws IOException if the trace cannot be read.
+     */
+    public void setWorkload(Workload w) throws IOException
     {
-        startSimThread(new SimThread(numThreads, gui, burst, wait, priority, cycles));
+        if (w.next()) {
+            addArrivals(w);
+        } else {
+            w.close();
+        }
+    }
+    
+    /**
+     * Returns the time at which the next SimThread is to arrive.
+     * @return Arrival time, or Long.MAX_VALUE if no more SimThreads are to arrive.
+     */
+    public long nextArrival()
+    {
+        return arrivals.nextTick();
+    }
+    
+    /**
+     * The engine calls this method at each tick to create the SimThreads
+     * that arrive by then.
+     * @param now Current time.
+     */
+    void arrive(long now)
+    {
+        while (arrivals.nextTick() <= now) {
+            ArrivalSource src = arrivals.poll();
+            try {
+                src.arrive(this);
+                arrivals.add(src);
+            } catch (IOException e) {
+                error("Error reading arrivals: " + e.getMessage());
+            }
+        }
     }
     
     /**
@@ -209,66 +896,244 @@ public class OS {
      */
     private void startSimThread(SimThread st)
     {
-    	print("\n\t\t\t!!! NEW THREAD " + st.getID());
-        st.setState(SimThread.State.QUEUED);
+    	print("\n\t\t\t!!! NEW THREAD ", st.getID(), "");
+        changeState(st, SimThread.State.QUEUED, TraceWriter.NEW);
         threadList.add(st);
-        numThreads++;
-        scheduler.enqueue(st, 0);
+        core = place(st);
+        core.getPolicy().enqueue(st, 0);
+        startClock();
+    }
+    
+    /**
+     * Drives a headless simulation with the Clock instead of run(), so it can
+     * be started, stopped, stepped and slowed down like a GUI simulation (for
+     * example from a SimServer).  The Clock starts out stopped.  Without a
+     * window to keep it alive, the Clock doesn't keep the program running.
+     */
+    public void useClock()
+    {
         if (clock == null) {
-            clock = new Clock(this, gui);
-            clock.start();
+            Clock c = new Clock(this, engine);
+            c.setDaemon(headless);
+            simThread = c;
+            clock = c;
+            c.start();
+        }
+    }
+    
+    // Creates the Clock as a separate (real) thread, the first time it is needed.
+    private void startClock()
+    {
+        if (!headless) {
+            useClock();
         }
     }
     
     /**
-     * Places the given SimThread in the Running state.
-     * @param st The SimThread to be placed in Running state.
+     * Places the given SimThread in the Running state on the core being scheduled.
+     * @param st The SimThread to be placed in Running state (null to leave the core idle).
      */
     public void setRunning(SimThread st)
     {
     	if(st == null) {
-    		running = null;
-    		print("\tOS: CPU is idle!!!");
+    		core.setRunning(null);
+    		metrics.coreChanged(core.getID(), false, engine.getTime());
+    		print("\tOS: CPU ", core.getID(), " is idle!!!");
     	} else if(st.getState() == SimThread.State.QUEUED) {
-            print("\tOS: Scheduling Thread " + st.getID() + "!");
-            st.setState(SimThread.State.RUNNING);
-            running = st;
-            print("Thread " + running.getID() + ": RUNNING!");
+            print("\tOS: Scheduling Thread ", st.getID(), "!");
+            if (st.runOn(core.getID(), migrationCost)) {
+                core.migrated();
+            }
+            changeState(st, SimThread.State.RUNNING, TraceWriter.DISPATCHED);
+            core.setRunning(st);
+            core.startSlice(engine.getTime());
+            metrics.coreChanged(core.getID(), true, engine.getTime());
+            print("Thread ", st.getID(), ": RUNNING!");
         } else {
         	throw new IllegalThreadStateException("SimThread: " + st.getState().toString());
         }
     }
             
+    // Changes a SimThread's state and records the change in the trace (if on).
+    private void changeState(SimThread t, SimThread.State state, int reason)
+    {
+        SimThread.State from = t.getState();
+        t.setState(state, engine.getTime());
+        metrics.stateChanged(t, engine.getTime());
+        digest = digest(digest, engine.getTime(), t.getID(), from, state, reason);
+        events++;
+        if (trace != null) {
+            try {
+                trace.record(engine.getTime(), t.getID(), from, state, reason, t.getCore());
+            } catch (IOException e) {
+                error("Error writing trace file.");
+                trace = null;
+            }
+        }
+    }
+    
+    /**
+     * Starts writing a binary trace of every SimThread state change (see TraceWriter).
+     * @param fileName Name of the trace file.
+     * @throws IOException if the trace file cannot be created.
+     */
+    public void startTrace(String fileName) throws IOException
+    {
+        stopTrace();
+        trace = new TraceWriter(fileName);
+    }
+    
+    /**
+     * Stops the trace (if on) and writes the rest of it out.
+     */
+    public void stopTrace()
+    {
+        if (trace != null) {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                error("Error writing trace file.");
+            }
+            trace = null;
+        }
+    }
+    
     /**
      * Writes text output to standard output and/or output file.
      * Output printed only if text output is turned on.
+     * The log file is written by a LogWriter on a background thread.
      * @param msg String to display to output.
      */
     public void print(String msg)
     {
-        if (gui.terminalOut()) {
+        if (terminalOut) {
             System.out.println(msg);
         }
-        if (gui.fileOut()) {
-            if (file == null) {
+        if (fileOut) {
+            if (log == null) {
                 try {
-                    file = new FileWriter(FILE_NAME);
+                    log = new LogWriter(FILE_NAME, logFlush, LogWriter.DEFAULT_CAPACITY);
                 } catch (IOException e) {
-                    JOptionPane.showMessageDialog(null, "Error creating log file.");
-                    gui.cancelFile();
+                    error("Error creating log file.");
+                    setFileOut(false);
                     return;
                 }
             }
-            try {
-                file.write(msg+"\n");
-                file.flush();
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(null, "Error writing log file.");
-                gui.cancelFile();
+            if (log.getFailure() != null) {
+                log.close();
+                log = null;
+                error("Error writing log file.");
+                setFileOut(false);
+                return;
             }
+            log.append(msg);
         }    
     }
     
+    /**
+     * Writes a message about a SimThread to the output.  The message is only
+     * put together if text output is turned on.
+     * @param before Text before the SimThread's ID.
+     * @param id SimThread's ID.
+     * @param after Text after the SimThread's ID.
+     */
+    public void print(String before, int id, String after)
+    {
+        if (terminalOut || fileOut) {
+            print(before + id + after);
+        }
+    }
+    
+    /**
+     * Returns true if text output is turned on (to the terminal or the log file).
+     * @return true if messages are being written anywhere.
+     */
+    public boolean isLogging()
+    {
+        return terminalOut || fileOut;
+    }
+    
+    /**
+     * Sets when the log file is forced out to the disk.  Takes effect the next
+     * time the log file is opened.
+     * @param flush The flush policy.
+     */
+    public void setLogFlush(LogWriter.Flush flush)
+    {
+        logFlush = flush;
+    }
+    
+    // Reports an error to the user (or to standard error when headless).
+    private void error(String msg)
+    {
+        if (!headless) {
+            JOptionPane.showMessageDialog(null, msg);
+        } else {
+            System.err.println(msg);
+        }
+    }
+    
+    /**
+     * Turns text output to the terminal on and off.
+     * @param tf Is terminal output on?
+     */
+    public void setTerminalOut(boolean tf)
+    {
+        terminalOut = tf;
+    }
+    
+    /**
+     * Turns text output to the log file on and off.  Turning it off closes
+     * the log file; turning it back on starts the file afresh.  Called from
+     * another thread while the simulation is running, the change is posted.
+     * @param tf Is log file output on?
+     */
+    public void setFileOut(final boolean tf)
+    {
+        if (elsewhere()) {
+            post(new Runnable() {
+                public void run() {
+                    setFileOut(tf);
+                }
+            });
+            return;
+        }
+        fileOut = tf;
+        if (!tf && log != null) {
+            log.close();
+            log = null;
+        }
+        listener.updateFileOut(tf);
+    }
+    
+    /**
+     * Runs a headless simulation until all SimThreads are done or the given time is reached.
+     * Time jumps from one event to the next, so no time is spent sleeping.
+     * The calling thread is the simulation thread until run returns: other
+     * threads change the simulation by posting commands (see post), which
+     * run carries out as it goes.
+     * @param maxTicks Time at which to stop the simulation.
+     * @return The simulated time at which the simulation stopped.
+     */
+    public long run(long maxTicks) {
+        if (!headless || clock != null) {
+            throw new IllegalStateException("Simulation is driven by the Clock");
+        }
+        simThread = Thread.currentThread();
+        boolean wasStopped = stopped;
+        stopped = false;                        // For the status published while running.
+        publishIfWanted();
+        try {
+            return engine.run(maxTicks);
+        } finally {
+            stopped = wasStopped;
+            if (status.isStopped() != stopped) {
+                publish();
+            }
+            simThread = null;
+        }
+    }
+    
     /**
      * Returns true is simulation is currently stopped.
      * @return true if simulation is stopped.
@@ -279,25 +1144,86 @@ public class OS {
     
     /**
      * Sets the speed of the simulation.
-     * @param n Speed in milliseconds.
+     * @param n Speed in milliseconds (0 to run as fast as possible).
      */
     public void speed(int n) {
     	if (clock != null)
     		clock.setSpeed(n);
     }
     
+    /**
+     * Sets how many time units the simulation advances per time unit of
+     * real time (see speed).
+     * @param n Time units per time unit of real time (at least 1).
+     */
+    public void multiplier(int n) {
+    	if (clock != null)
+    		clock.setMultiplier(n);
+    }
+    
+    /**
+     * Runs the simulation until the given time, or until every SimThread is
+     * done, and then stops it.  At speed 0 this fast-forwards to that time.
+     * @param tick Time at which to stop (Long.MAX_VALUE to run until every SimThread is done).
+     */
+    public void runUntil(long tick) {
+    	if (clock != null)
+    		clock.runUntil(tick);
+    }
+    
+    /**
+     * Runs the simulation until every SimThread is done, and then stops it.
+     */
+    public void runUntilDone() {
+    	runUntil(Long.MAX_VALUE);
+    }
+    
+    /**
+     * The Clock calls this method (on the simulation thread) when it starts
+     * to run until a given time.
+     */
+    void started() {
+    	setStopped(false);
+    }
+    
+    /**
+     * The Clock calls this method (on the simulation thread) when it stops
+     * by itself, having reached the time it was to run until or run out of
+     * SimThreads.
+     */
+    void halted() {
+    	setStopped(true);
+    }
+    
+    // Records whether the simulation is stopped (simulation thread only), and says so.
+    private void setStopped(boolean tf) {
+    	stopped = tf;
+    	publish();
+    	listener.updateStopped(tf);
+    }
+    
     /**
      * Stops (pauses) the simulation if currently running, or runs the simulation if currently stopped.
+     * Called from another thread, this is posted, so the simulation thread decides which.
      */
     public void startStop() {
-    	if (clock != null) {
-    		if(stopped) {
-    			stopped = false;
-    			clock.go();
-    		} else {
-    			stopped = true;
-    			clock.pause();
-    		}
+    	if (clock == null) {
+    		return;
+    	}
+    	if (elsewhere()) {
+    		post(new Runnable() {
+    			public void run() {
+    				startStop();
+    			}
+    		});
+    		return;
+    	}
+    	if(stopped) {
+    		setStopped(false);
+    		clock.go();
+    	} else {
+    		setStopped(true);
+    		clock.pause();
     	}
     }
     
@@ -305,10 +1231,21 @@ public class OS {
      * Advances simulation one time unit.
      */
     public void step() {
-    	if (clock != null) {
-    		stopped = true;
-    		clock.step();
+    	if (clock == null) {
+    		return;
+    	}
+    	if (elsewhere()) {
+    		post(new Runnable() {
+    			public void run() {
+    				step();
+    			}
+    		});
+    		return;
+    	}
+    	if (!stopped) {
+    		setStopped(true);
     	}
+    	clock.step();
     }
         
 }
@@ -0,0 +1,100 @@
+/**
+ * Random arrivals of SimThreads with random CPU burst and wait times and a
+ * random priority, for open-system workloads (SimThreads keep arriving
+ * while others run, instead of all starting at time 0).
+ *
+ * Poisson arrivals are independent of each other: the time between them
+ * is exponentially distributed with a fixed mean.  Bursty arrivals
+ * alternate between quiet and busy periods of random (exponentially
+ * distributed) length, and are Poisson within each period, with a much
+ * shorter mean time between arrivals while busy (a two-state
+ * Markov-modulated Poisson process).  Arrival times are rounded up to
+ * whole time units, so several SimThreads may arrive at once.
+ */
+
+import java.util.Random;
+
+public class RandomArrivals implements ArrivalSource {
+
+    private Random rand;            // Arrival times and priorities (burst and wait times come from the OS).
+    private double quietGap;        // Mean time between arrivals in a quiet period.
+    private double busyGap;         // Mean time between arrivals in a busy period.
+    private double quietLength;     // Mean length of a quiet period.
+    private double busyLength;      // Mean length of a busy period.
+    private boolean busy;           // Is this a busy period?
+    private double periodEnd;       // Time at which the current period ends.
+    private double time;            // Exact time of the next arrival.
+    private int left;               // Number of SimThreads still to arrive.
+
+    /**
+     * Constructor.  Creates bursty arrivals, starting with a quiet period.
+     * @param seed Seed of the random arrival times and priorities.
+     * @param start Time at which the first quiet period starts.
+     * @param quietGap Mean time between arrivals in a quiet period.
+     * @param busyGap Mean time between arrivals in a busy period.
+     * @param quietLength Mean length of a quiet period.
+     * @param busyLength Mean length of a busy period.
+     * @param count Number of SimThreads to create.
+     */
+    public RandomArrivals(long seed, long start, double quietGap, double busyGap,
+                          double quietLength, double busyLength, int count)
+    {
+        if (quietGap <= 0 || busyGap <= 0 || quietLength <= 0 || busyLength <= 0) {
+            throw new IllegalArgumentException("Mean times must be positive");
+        }
+        rand = new Random(seed);
+        this.quietGap = quietGap;
+        this.busyGap = busyGap;
+        this.quietLength = quietLength;
+        this.busyLength = busyLength;
+        busy = false;
+        time = start;
+        periodEnd = start + exponential(quietLength);
+        left = count;
+        advance();
+    }
+
+    /**
+     * Creates Poisson arrivals.
+     * @param seed Seed of the random arrival times and priorities.
+     * @param start Time from which SimThreads arrive.
+     * @param meanGap Mean time between arrivals (1 / arrival rate).
+     * @param count Number of SimThreads to create.
+     * @return The arrivals.
+     */
+    public static RandomArrivals poisson(long seed, long start, double meanGap, int count)
+    {
+        return new RandomArrivals(seed, start, meanGap, meanGap, Double.MAX_VALUE, Double.MAX_VALUE, count);
+    }
+
+    public long nextArrival()
+    {
+        return left > 0 ? (long) Math.ceil(time) : Long.MAX_VALUE;
+    }
+
+    public void arrive(OS os)
+    {
+        os.createSimThread(rand.nextInt(Scheduler.LEVELS));
+        left--;
+        advance();
+    }
+
+    // Moves time on to the next arrival.  Arrivals within a period are memoryless,
+    // so a gap that runs past the end of the period is simply drawn again in the next one.
+    private void advance()
+    {
+        double t = time + exponential(busy ? busyGap : quietGap);
+        while (t > periodEnd) {
+            busy = !busy;
+            time = periodEnd;
+            periodEnd = time + exponential(busy ? busyLength : quietLength);
+            t = time + exponential(busy ? busyGap : quietGap);
+        }
+        time = t;
+    }
+
+    private double exponential(double mean)
+    {
+        return -mean * Math.log(1 - rand.nextDouble());
+    }
+}
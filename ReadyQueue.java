@@ -0,0 +1,222 @@
+/**
+ * The ready queue(s) of the scheduler: one FIFO queue per priority level,
+ * plus a bitmap of the levels that are not empty.
+ *
+ * Each level is an array-backed ring buffer, and the highest non-empty level
+ * is found from the bitmap with a couple of bit operations, so adding a
+ * SimThread and removing the next one to run take constant time no matter
+ * how many levels or SimThreads there are.  The bitmap has two layers (a
+ * summary word with one bit per 64 levels), which allows up to 4096 levels.
+ */
+public class ReadyQueue {
+
+    public static final int MAX_LEVELS = 64 * 64;   // Limit of the two-layer bitmap.
+
+    private SimThread[][] queues;   // Ring buffer for each level.
+    private int[] head;             // Index of first SimThread in each level.
+    private int[] count;            // Number of SimThreads in each level.
+    private long[] bits;            // Bit i of word w is set if level 64*w+i is not empty.
+    private long summary;           // Bit w is set if word w of bits is not zero.
+    private int size;               // Number of SimThreads in all levels.
+
+    /**
+     * Constructor.
+     * @param levels Number of priority levels (0 to levels-1).
+     */
+    public ReadyQueue(int levels)
+    {
+        if (levels < 1 || levels > MAX_LEVELS) {
+            throw new IllegalArgumentException("levels: " + levels);
+        }
+        queues = new SimThread[levels][];
+        for (int i=0; i<levels; i++) {
+            queues[i] = new SimThread[4];
+        }
+        head = new int[levels];
+        count = new int[levels];
+        bits = new long[(levels + 63) / 64];
+        summary = 0;
+        size = 0;
+    }
+
+    /**
+     * @return Number of priority levels.
+     */
+    public int levels() { return queues.length; }
+
+    /**
+     * @return Number of SimThreads in the ready queue.
+     */
+    public int size() { return size; }
+
+    /**
+     * @return true if no SimThread is in the ready queue.
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * @param level A priority level.
+     * @return Number of SimThreads waiting at that level.
+     */
+    public int size(int level) { return count[level]; }
+
+    /**
+     * Returns (without removing) a SimThread of the given level.
+     * @param level A priority level.
+     * @param i Position in that level's queue (0 is the front).
+     * @return The SimThread at that position.
+     */
+    public SimThread get(int level, int i)
+    {
+        SimThread[] q = queues[level];
+        return q[(head[level] + i) & (q.length - 1)];
+    }
+
+    /**
+     * Adds a SimThread to the back of the queue for the given level.
+     * @param st The SimThread to add.
+     * @param level The SimThread's priority level.
+     */
+    public void add(SimThread st, int level)
+    {
+        SimThread[] q = queues[level];
+        if (count[level] == q.length) {
+            q = grow(level);
+        }
+        q[(head[level] + count[level]) & (q.length - 1)] = st;
+        if (count[level]++ == 0) {
+            setBit(level);
+        }
+        size++;
+    }
+
+    /**
+     * @return The highest priority level that is not empty, or -1 if the ready queue is empty.
+     */
+    public int highestLevel()
+    {
+        if (summary == 0) {
+            return -1;
+        }
+        int w = 63 - Long.numberOfLeadingZeros(summary);
+        return 64 * w + 63 - Long.numberOfLeadingZeros(bits[w]);
+    }
+
+    /**
+     * Finds the next level down that is not empty, for going through the
+     * non-empty levels from highestLevel() down.
+     * @param level A priority level.
+     * @return The highest non-empty level below it, or -1 if there is none.
+     */
+    public int highestLevelBelow(int level)
+    {
+        if (level <= 0) {
+            return -1;
+        }
+        int l = level - 1;
+        int w = l >>> 6;
+        long b = bits[w] & (-1L >>> (63 - (l & 63)));      // Levels 64*w to l.
+        if (b != 0) {
+            return 64 * w + 63 - Long.numberOfLeadingZeros(b);
+        }
+        long words = summary & ((1L << w) - 1);             // Words below w.
+        if (words == 0) {
+            return -1;
+        }
+        w = 63 - Long.numberOfLeadingZeros(words);
+        return 64 * w + 63 - Long.numberOfLeadingZeros(bits[w]);
+    }
+
+    /**
+     * @return The lowest priority level that is not empty, or -1 if the ready queue is empty.
+     */
+    public int lowestLevel()
+    {
+        if (summary == 0) {
+            return -1;
+        }
+        int w = Long.numberOfTrailingZeros(summary);
+        return 64 * w + Long.numberOfTrailingZeros(bits[w]);
+    }
+
+    /**
+     * Removes and returns the first SimThread of the highest non-empty level.
+     * @return The next SimThread to run, or null if the ready queue is empty.
+     */
+    public SimThread poll()
+    {
+        int level = highestLevel();
+        return level < 0 ? null : poll(level);
+    }
+
+    /**
+     * Removes and returns the first SimThread of the given level.
+     * @param level A priority level.
+     * @return The first SimThread at that level, or null if the level is empty.
+     */
+    public SimThread poll(int level)
+    {
+        if (count[level] == 0) {
+            return null;
+        }
+        SimThread[] q = queues[level];
+        SimThread st = q[head[level]];
+        q[head[level]] = null;
+        head[level] = (head[level] + 1) & (q.length - 1);
+        if (--count[level] == 0) {
+            clearBit(level);
+        }
+        size--;
+        return st;
+    }
+
+    /**
+     * Removes and returns the last SimThread of the given level.
+     * @param level A priority level.
+     * @return The last SimThread at that level, or null if the level is empty.
+     */
+    public SimThread pollLast(int level)
+    {
+        if (count[level] == 0) {
+            return null;
+        }
+        SimThread[] q = queues[level];
+        int slot = (head[level] + count[level] - 1) & (q.length - 1);
+        SimThread st = q[slot];
+        q[slot] = null;
+        if (--count[level] == 0) {
+            clearBit(level);
+        }
+        size--;
+        return st;
+    }
+
+    // Doubles the capacity of a level's ring buffer (capacities are powers of two).
+    private SimThread[] grow(int level)
+    {
+        SimThread[] q = queues[level];
+        SimThread[] bigger = new SimThread[q.length * 2];
+        for (int i=0; i<count[level]; i++) {
+            bigger[i] = q[(head[level] + i) & (q.length - 1)];
+        }
+        queues[level] = bigger;
+        head[level] = 0;
+        return bigger;
+    }
+
+    private void setBit(int level)
+    {
+        int w = level >>> 6;
+        bits[w] |= 1L << level;
+        summary |= 1L << w;
+    }
+
+    private void clearBit(int level)
+    {
+        int w = level >>> 6;
+        bits[w] &= ~(1L << level);
+        if (bits[w] == 0) {
+            summary &= ~(1L << w);
+        }
+    }
+}
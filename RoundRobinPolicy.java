@@ -0,0 +1,66 @@
+/**
+ * Round Robin: SimThreads run in the order they entered the ready queue, and
+ * a SimThread that uses up the time quantum goes to the back of the queue.
+ */
+
+import java.util.ArrayDeque;
+
+public class RoundRobinPolicy implements SchedulingPolicy
+{
+    public static final int DEFAULT_QUANTUM = 3;    // Time quantum used if none is given
+
+    private ArrayDeque<SimThread> readyQ;   // SimThreads in the order they were queued
+    private OS os;                          // Reference to the "OS"
+
+    /**
+     * Constructor.
+     * @param os A reference to the simulation's OS object.
+     * @param quantum Length of the time quantum.
+     */
+    public RoundRobinPolicy(OS os, int quantum)
+    {
+        this.os = os;
+        readyQ = new ArrayDeque<SimThread>();
+        os.setPreempt(true);
+        os.setQuantum(quantum);
+    }
+
+    public void enqueue(SimThread st, int code)
+    {
+        if (os.getRunning() == null) {
+            os.setRunning(st);
+        } else {
+            readyQ.add(st);
+        }
+    }
+
+    public void scheduleThread()
+    {
+        os.setRunning(readyQ.poll());
+    }
+
+    public int size()
+    {
+        return readyQ.size();
+    }
+
+    public SimThread steal()
+    {
+        return readyQ.pollLast();
+    }
+
+    public void save(Snapshot out)
+    {
+        out.putInt(readyQ.size());
+        for (SimThread st : readyQ) {
+            out.putThread(st);
+        }
+    }
+
+    public void restore(Snapshot in)
+    {
+        for (int n = in.getInt(); n > 0; n--) {
+            readyQ.add(in.getThread());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Checks that simulation runs are reproducible, for regression testing:
+ * a seeded headless run must make exactly the same scheduling decisions
+ * every time.  A Scenario is run twice, each time with a binary trace (see
+ * TraceWriter), and the two runs' digests (see OS.getDigest) are compared.
+ * If they differ, the traces are read side by side to find the first state
+ * change at which the runs part.  Two traces from anywhere (say, before
+ * and after a change to a policy) can be compared the same way.
+ *
+ * Usage: java RunVerifier trace-a trace-b
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+public class RunVerifier {
+
+    private static final String[] REASONS = {"new", "unblocked", "quantum", "preempted",
+                                             "dispatched", "blocked", "exited"};
+
+    /**
+     * A simulation run to check.
+     */
+    public static interface Scenario {
+
+        /**
+         * Sets up and runs a simulation.  The trace must be started before
+         * the first SimThread is created.
+         * @param traceFile Name of the file to trace the run to (see OS.startTrace).
+         * @return The simulation, after the run.
+         * @throws IOException if the trace cannot be written.
+         */
+        OS run(String traceFile) throws IOException;
+    }
+
+    private long events;        // Number of state changes the runs agree on.
+    private String first;       // First state change of the first run that differs (null if none).
+    private String second;      // The state change of the second run in its place.
+    private long[] digests;     // Digest of each run (null when comparing traces).
+
+    private RunVerifier(long events, String first, String second, long[] digests)
+    {
+        this.events = events;
+        this.first = first;
+        this.second = second;
+        this.digests = digests;
+    }
+
+    /**
+     * Runs a scenario twice and compares the runs.
+     * @param scenario The scenario.
+     * @return The comparison.
+     * @throws IOException if the traces cannot be written or read.
+     */
+    public static RunVerifier verify(Scenario scenario) throws IOException
+    {
+        File a = File.createTempFile("run-a", ".trace");
+        File b = File.createTempFile("run-b", ".trace");
+        try {
+            OS first = scenario.run(a.getPath());
+            first.stopTrace();
+            OS second = scenario.run(b.getPath());
+            second.stopTrace();
+            RunVerifier result = compare(a.getPath(), b.getPath());
+            result.digests = new long[] {first.getDigest(), second.getDigest()};
+            if (result.isIdentical() && first.getDigest() != second.getDigest()) {
+                result.first = "digest " + Long.toHexString(first.getDigest());     // Changes before the trace started.
+                result.second = "digest " + Long.toHexString(second.getDigest());
+            }
+            return result;
+        } finally {
+            a.delete();
+            b.delete();
+        }
+    }
+
+    /**
+     * Compares two traces, state change by state change.
+     * @param traceA Name of the first trace file.
+     * @param traceB Name of the second trace file.
+     * @return The comparison.
+     * @throws IOException if either trace cannot be read.
+     */
+    public static RunVerifier compare(String traceA, String traceB) throws IOException
+    {
+        TraceReader a = new TraceReader(traceA);
+        TraceReader b = new TraceReader(traceB);
+        try {
+            long n = 0;
+            while (true) {
+                boolean moreA = a.next();
+                boolean moreB = b.next();
+                if (!moreA && !moreB) {
+                    return new RunVerifier(n, null, null, null);
+                }
+                if (moreA != moreB || a.tick() != b.tick() || a.id() != b.id() || a.from() != b.from()
+                        || a.to() != b.to() || a.reason() != b.reason() || a.core() != b.core()) {
+                    return new RunVerifier(n, moreA ? describe(a) : "end of run", moreB ? describe(b) : "end of run", null);
+                }
+                n++;
+            }
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    // One state change, as text.
+    private static String describe(TraceReader r)
+    {
+        int reason = r.reason();
+        return "time " + r.tick() + ": Thread " + r.id() + " " + r.from() + " -> " + r.to()
+            + " (" + (reason < REASONS.length ? REASONS[reason] : "reason " + reason) + ")"
+            + (r.core() >= 0 ? " on core " + r.core() : "");
+    }
+
+    /**
+     * @return true if the runs made the same state changes at the same times.
+     */
+    public boolean isIdentical() { return first == null; }
+
+    /**
+     * @return Number of state changes before the first difference (all of them if identical).
+     */
+    public long getEvents() { return events; }
+
+    /**
+     * @return The first run's first state change that differs (null if identical).
+     */
+    public String getFirst() { return first; }
+
+    /**
+     * @return The second run's state change in its place (null if identical).
+     */
+    public String getSecond() { return second; }
+
+    public String toString()
+    {
+        String s = isIdentical() ? "identical: " + events + " state changes"
+                                 : "runs part after " + events + " state changes:\n  first:  " + first + "\n  second: " + second;
+        if (digests != null && isIdentical()) {
+            s += ", digest " + Long.toHexString(digests[0]);
+        }
+        return s;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2) {
+            System.err.println("Usage: java RunVerifier trace-a trace-b");
+            System.exit(1);
+        }
+        RunVerifier result = compare(args[0], args[1]);
+        System.out.println(result);
+        System.exit(result.isIdentical() ? 0 : 1);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Shortest Job First: the SimThread with the shortest CPU burst runs next,
+ * until the end of its burst.  The ready queue is a heap keyed on the CPU
+ * burst (ties go to the lower ID), so enqueue and scheduleThread take
+ * O(log n) time.  Another core steals the longest job.
+ */
+
+import java.util.Comparator;
+
+public class SJFPolicy implements SchedulingPolicy
+{
+    private ThreadHeap readyQ;                  // SimThreads by CPU burst
+    private OS os;                              // Reference to the "OS"
+
+    /**
+     * Constructor.
+     * @param os A reference to the simulation's OS object.
+     */
+    public SJFPolicy(OS os)
+    {
+        this.os = os;
+        readyQ = new ThreadHeap(new Comparator<SimThread>() {
+            public int compare(SimThread a, SimThread b) {
+                if (a.getCPUBurst() != b.getCPUBurst()) {
+                    return a.getCPUBurst() < b.getCPUBurst() ? -1 : 1;
+                }
+                return Integer.compare(a.getID(), b.getID());
+            }
+        });
+        os.setPreempt(false);
+    }
+
+    public void enqueue(SimThread st, int code)
+    {
+        if (os.getRunning() == null) {
+            os.setRunning(st);
+        } else {
+            readyQ.add(st);
+        }
+    }
+
+    public void scheduleThread()
+    {
+        os.setRunning(readyQ.poll());
+    }
+
+    public int size()
+    {
+        return readyQ.size();
+    }
+
+    /**
+     * Gives up the SimThread with the longest CPU burst.
+     */
+    public SimThread steal()
+    {
+        return readyQ.pollLast();
+    }
+
+    /**
+     * Writes the heap in its array order, so adding the SimThreads back in
+     * that order rebuilds the same heap.
+     */
+    public void save(Snapshot out)
+    {
+        out.putInt(readyQ.size());
+        for (int i=0; i<readyQ.size(); i++) {
+            out.putThread(readyQ.at(i));
+        }
+    }
+
+    public void restore(Snapshot in)
+    {
+        for (int n = in.getInt(); n > 0; n--) {
+            readyQ.add(in.getThread());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Shortest Remaining Time First: the SimThread with the least time left in
+ * its CPU burst runs next.  A SimThread entering the ready queue with less
+ * time left than the Running SimThread preempts it.  The ready queue is a
+ * heap keyed on the remaining time (ties go to the lower ID), so enqueue
+ * and scheduleThread take O(log n) time.  Another core steals the
+ * SimThread with the most time left.
+ */
+
+import java.util.Comparator;
+
+public class SRTFPolicy implements SchedulingPolicy
+{
+    private ThreadHeap readyQ;                  // SimThreads by remaining CPU burst
+    private OS os;                              // Reference to the "OS"
+
+    /**
+     * Constructor.
+     * @param os A reference to the simulation's OS object.
+     */
+    public SRTFPolicy(OS os)
+    {
+        this.os = os;
+        readyQ = new ThreadHeap(new Comparator<SimThread>() {
+            public int compare(SimThread a, SimThread b) {
+                if (a.getRunTime() != b.getRunTime()) {
+                    return a.getRunTime() < b.getRunTime() ? -1 : 1;
+                }
+                return Integer.compare(a.getID(), b.getID());
+            }
+        });
+        os.setPreempt(false);           // Preemption comes from enqueue, not the time quantum.
+    }
+
+    public void enqueue(SimThread st, int code)
+    {
+        SimThread running = os.getRunning();
+        if (running == null) {
+            os.setRunning(st);
+        } else if (st.getRunTime() < running.getRunTime()) {
+            os.preemptRunningThread(st);    // Running thread comes back with code 3.
+        } else {
+            readyQ.add(st);
+        }
+    }
+
+    public void scheduleThread()
+    {
+        os.setRunning(readyQ.poll());
+    }
+
+    public int size()
+    {
+        return readyQ.size();
+    }
+
+    /**
+     * Gives up the SimThread with the most time left in its CPU burst.
+     */
+    public SimThread steal()
+    {
+        return readyQ.pollLast();
+    }
+
+    /**
+     * Writes the heap in its array order, so adding the SimThreads back in
+     * that order rebuilds the same heap.
+     */
+    public void save(Snapshot out)
+    {
+        out.putInt(readyQ.size());
+        for (int i=0; i<readyQ.size(); i++) {
+            out.putThread(readyQ.at(i));
+        }
+    }
+
+    public void restore(Snapshot in)
+    {
+        for (int n = in.getInt(); n > 0; n--) {
+            readyQ.add(in.getThread());
+        }
+    }
+}
@@ -1,31 +1,68 @@
 /**
- * Implements the scheduling algorithm used by the simulation.
- * Currently implements Round Robin (with preemption on) and FIFO (with preemption off).
+ * Implements the default scheduling algorithm used by the simulation:
+ * a multilevel feedback queue (SchedulingPolicy.Kind.MLFQ).
+ *
+ * Against starvation, the LevelTable can turn on aging and periodic boosts.
+ * A SimThread that has waited too long at the front of its level's queue
+ * moves up a level; since each level is a FIFO queue, only the front of
+ * each level needs checking.  A boost doesn't move every Queued SimThread
+ * either: it counts one more epoch, and a SimThread queued in an earlier
+ * epoch runs before the others (front of the highest level first) and at
+ * the highest priority when its turn comes.  Both are checked whenever a
+ * SimThread is scheduled.  The earliest time at which the front of any
+ * level is due to age is kept, so the levels are only looked at once that
+ * time has come; otherwise the check is a comparison.
  * 
  * @author Adam Fischbach - Widener University
  * @version Fall 2012
  */
 
- import java.util.*;
-
-
-public class Scheduler 
+public class Scheduler implements SchedulingPolicy
 {
-    LinkedList<SimThread>[] readyQ;//= new LinkedList<SimThread>[5];// = new Queue<SimThread>[5];
+    public static final int LEVELS = 5;  // Number of priority levels (0 to 4) of the default table
+    public static final int[] DEFAULT_QUANTA = {4, 8, 16, 25, 40};   // Time quantum of each priority level
+    
+    ReadyQueue readyQ;                   // One queue per priority level
+    private LevelTable levels;           // Quantum and moves of each priority level
+    private boolean aging;               // Does any level age?
+    private int boosts;                  // Number of boosts so far
+    private int stale;                   // Number of Queued SimThreads queued before the last boost
+    private long nextBoost;              // Time of the next boost
+    private long nextAge;                // No front of a level ages before this time
     private OS os;                       // Reference to the "OS"
     
     /**
      * Constructor.
      * @param os A reference to the simulation's OS object.
      */
-    public Scheduler(OS os)//hello
+    public Scheduler(OS os)
     {
-        this.os = os;//hello
-        readyQ = (LinkedList<SimThread>[])new LinkedList<?>[5];//new LinkedList<SimThread>();//array of qs
-        for (int i=0; i<5; i++)
-        {
-            readyQ[i] = new LinkedList<SimThread>();//initialize qs
-        }
+        this(os, LevelTable.DEFAULT);
+    }
+    
+    /**
+     * Constructor.
+     * @param os A reference to the simulation's OS object.
+     * @param quanta Time quantum of each priority level (one level per quantum).
+     */
+    public Scheduler(OS os, int[] quanta)
+    {
+        this(os, LevelTable.of(quanta));
+    }
+    
+    /**
+     * Constructor.
+     * @param os A reference to the simulation's OS object.
+     * @param levels The priority levels: their number, quanta, and moves between them.
+     */
+    public Scheduler(OS os, LevelTable levels)
+    {
+        this.os = os;
+        readyQ = new ReadyQueue(levels.levels());
+        boosts = 0;
+        stale = 0;
+        nextAge = Long.MAX_VALUE;
+        useLevels(levels);
         os.setPreempt(true);                      // Turn preemption on for Round Robin.
         os.setQuantum(3);                         // Set time quantum to 3 time units.
     }
@@ -45,7 +82,9 @@ public class Scheduler
     the higher-priority thread.
     • If a thread exceeds its time quantum (time limit), its priority is lowered one level.
     • Whenever a thread returns from the Blocked state, its priority increases one level.
-    • The Round Robin time quantum for each thread depends upon its priority as follows:
+    • The Round Robin time quantum for each thread depends upon its priority as follows
+      (this is LevelTable.DEFAULT; another table, with other levels, quanta and moves
+      between levels, can be given to the constructor or to setLevels):
             o Priority 0 => Time Quantum is 4
             o Priority 1 => Time Quantum is 8
             o Priority 2 => Time Quantum is 16
@@ -57,80 +96,156 @@ public class Scheduler
         //int q;
     	if(os.getRunning() == null) 
         {
+            setQuantumFor(levels.level(st.getPriority()));
     		os.setRunning(st);
     	} 
         else 
         {
-            int p = st.getPriority();//new thread
-            int p1 = os.getRunning().getPriority();//curr thread
+            int p = levels.level(st.getPriority());//new thread
+            int p1 = levels.level(os.getRunning().getPriority());//curr thread
             if (code==2)
             {
-                p=p-1;
+                p=levels.expire(p);
                 st.setPriority(p);
             }
             else if (code==1)
             {
-                p=p+1;
+                p=levels.unblock(p);
                 st.setPriority(p);
             }
+            else if (p != st.getPriority())
+            {
+                st.setPriority(p);              // Priority was outside the table.
+            }
             if (p>p1)
             {
-                if (p==0)
-                {
-                     os.setQuantum(4);
-                }
-                else if (p==1)
-                {
-                    os.setQuantum(8);
-                }
-                else if (p==2)
-                {
-                    os.setQuantum(16);
-                }
-                else if (p==3)
-                {
-                    os.setQuantum(25);
-                }
-                else if (p==4)
-                {
-                    os.setQuantum(40);
-                }
-                else
-                {
-                    System.out.println("error bc p!=0,1,2,3,or 4");
-                }
-                readyQ[p1].add(os.getRunning());
-                os.setRunning(st);
+                setQuantumFor(p);
+                os.preemptRunningThread(st);    // Running thread goes back to the Queued state.
             }
             else
             {
-                readyQ[p].add(st);
-                if (p1==0)
-                {
-                     os.setQuantum(4);
-                }
-                else if (p1==1)
-                {
-                    os.setQuantum(8);
-                }
-                else if (p1==2)
-                {
-                    os.setQuantum(16);
-                }
-                else if (p1==3)
-                {
-                    os.setQuantum(25);
-                }
-                else if (p1==4)
-                {
-                    os.setQuantum(40);
+                add(st, p);
+            }
+    	}
+    }
+    
+    // Adds a SimThread to the back of a level's queue, noting when and in which epoch.
+    private void add(SimThread st, int p)
+    {
+        st.queuedSince = os.getTime();
+        st.epoch = boosts;
+        if (readyQ.size(p) == 0) {
+            due(p, st);                         // The front of the level.
+        }
+        readyQ.add(st, p);
+    }
+    
+    // Brings nextAge forward to when the front of a level is due to age.
+    private void due(int level, SimThread front)
+    {
+        int limit = levels.age(level);
+        if (limit > 0 && level < levels.levels() - 1 && !isStale(front)) {
+            nextAge = Math.min(nextAge, front.queuedSince + limit);
+        }
+    }
+    
+    // Was a Queued SimThread queued before the last boost?
+    private boolean isStale(SimThread st)
+    {
+        return st.epoch != boosts;
+    }
+    
+    // Called for each SimThread leaving the ready queues to run: carries out a boost it missed.
+    private SimThread removed(SimThread st)
+    {
+        if (st != null && isStale(st)) {
+            stale--;
+            int top = levels.levels() - 1;
+            if (st.getPriority() != top) {
+                st.setPriority(top);
+            }
+        }
+        return st;
+    }
+    
+    /*
+     * Moves up one level each SimThread that has waited too long at the front
+     * of its level, and works out when the next one is due.  Nothing is
+     * looked at before then: later SimThreads in a level joined it later, so
+     * only a new front (after a stale one leaves, or in an empty level) can
+     * be due sooner, and those are noted as they come (see due).
+     */
+    private void age(long now)
+    {
+        if (now < nextAge) {
+            return;
+        }
+        nextAge = Long.MAX_VALUE;
+        int top = levels.levels() - 1;
+        for (int level = readyQ.highestLevelBelow(top); level >= 0; level = readyQ.highestLevelBelow(level)) {
+            int limit = levels.age(level);
+            while (limit > 0 && readyQ.size(level) > 0) {
+                SimThread st = readyQ.get(level, 0);
+                if (isStale(st) || now - st.queuedSince < limit) {
+                    due(level, st);             // The rest of the level waited less (or will be boosted).
+                    break;
                 }
-                else
-                {
-                    System.out.println("error bc p1!=0,1,2,3,or 4");
+                readyQ.poll(level);
+                st.setPriority(level + 1);
+                add(st, level + 1);
+            }
+        }
+    }
+    
+    // Sets the time quantum for a thread of the given priority level.
+    private void setQuantumFor(int p)
+    {
+        os.setQuantum(levels.quantum(p));
+    }
+    
+    /**
+     * @return The priority levels in use.
+     */
+    public LevelTable getLevels()
+    {
+        return levels;
+    }
+    
+    /**
+     * Switches to another table of priority levels.  Queued SimThreads keep
+     * their places; if there are fewer levels now, those above the highest
+     * level move to it.  The new quanta apply from the next time slice.
+     * Called by OS.setLevels between ticks.
+     * @param table The new priority levels.
+     */
+    public void setLevels(LevelTable table)
+    {
+        if (table.levels() != readyQ.levels()) {
+            ReadyQueue q = new ReadyQueue(table.levels());
+            for (int level=0; level<readyQ.levels(); level++) {
+                for (SimThread st = readyQ.poll(level); st != null; st = readyQ.poll(level)) {
+                    int p = table.level(level);
+                    if (p != st.getPriority()) {
+                        st.setPriority(p);
+                    }
+                    q.add(st, p);
                 }
             }
-    	}
+            readyQ = q;
+        }
+        useLevels(table);
+    }
+    
+    // Takes up a table's aging and boost settings.
+    private void useLevels(LevelTable table)
+    {
+        levels = table;
+        aging = false;
+        for (int level=0; level<table.levels(); level++) {
+            aging |= table.age(level) > 0;
+        }
+        nextBoost = os.getTime() + table.boost();
+        nextAge = Long.MIN_VALUE;               // Look at every level again.
     }
     
     /**
@@ -139,28 +254,108 @@ public class Scheduler
      */
     public void scheduleThread()
     {
-    	if(readyQ.length==0) 
-        {
-    		os.setRunning(null);
-    	} 
-        else 
-        {
-            //int p = os.getRunning().getPriority();//curr thread priority
-            int i = 0;
-            while (i<5)
-            {
-                if (!readyQ[i].isEmpty())
-                {
-                    SimThread best = readyQ[i].peek();//get first element of array that has priority i (checks from 0 to 4)
-                    os.setRunning(best);
-                    readyQ[i].remove(best);
-                    return;//break;//exit;
+        long now = os.getTime();
+        if (levels.boost() > 0 && now >= nextBoost) {
+            boosts++;                           // Every Queued SimThread is now stale.
+            stale = readyQ.size();
+            nextBoost = now + levels.boost();
+        }
+        if (aging) {
+            age(now);
+        }
+        if (stale > 0) {
+            for (int level = readyQ.highestLevel(); level >= 0; level = readyQ.highestLevelBelow(level)) {
+                if (isStale(readyQ.get(level, 0))) {
+                    SimThread st = readyQ.poll(level);
+                    if (readyQ.size(level) > 0) {
+                        due(level, readyQ.get(level, 0));
+                    }
+                    dispatch(removed(st));
+                    return;
                 }
-                else
-                {
-                    i++;
+            }
+        }
+        dispatch(removed(readyQ.poll()));//thread with highest priority, or null (idle) if all queues are empty
+    }
+    
+    // Runs a SimThread (or nobody) with the quantum of its level.
+    private void dispatch(SimThread st)
+    {
+        if (st != null) {
+            setQuantumFor(levels.level(st.getPriority()));
+        }
+        os.setRunning(st);
+    }
+    
+    /**
+     * @return Number of boosts so far.
+     */
+    public int getBoosts()
+    {
+        return boosts;
+    }
+    
+    /**
+     * @return Number of SimThreads in the ready queues.
+     */
+    public int size()
+    {
+        return readyQ.size();
+    }
+    
+    /**
+     * Gives up the last SimThread of the lowest non-empty priority level.
+     * @return The SimThread, or null if the ready queues are empty.
+     */
+    public SimThread steal()
+    {
+        int level = readyQ.lowestLevel();
+        SimThread st = level < 0 ? null : readyQ.pollLast(level);
+        if (st != null && isStale(st)) {
+            stale--;                            // The other core doesn't know about the boost.
+        }
+        return st;
+    }
+    
+    /**
+     * Writes the time of the next boost, the number of priority levels, then
+     * each level's queue, front to back, with the time each SimThread joined
+     * it and whether it was queued before the last boost.  The table itself
+     * isn't written: a restored Scheduler keeps its own.
+     */
+    public void save(Snapshot out)
+    {
+        out.putLong(nextBoost);
+        out.putInt(boosts);
+        out.putInt(readyQ.levels());
+        for (int level=0; level<readyQ.levels(); level++) {
+            int n = readyQ.size(level);
+            out.putInt(n);
+            for (int i=0; i<n; i++) {
+                SimThread st = readyQ.get(level, i);
+                out.putThread(st);
+                out.putLong(st.queuedSince);
+                out.putBoolean(isStale(st));
+            }
+        }
+    }
+    
+    public void restore(Snapshot in)
+    {
+        nextBoost = in.getLong();
+        boosts = in.getInt();
+        stale = 0;
+        for (int level=0, n=in.getInt(); level<n; level++) {
+            for (int k = in.getInt(); k > 0; k--) {
+                SimThread st = in.getThread();
+                add(st, levels.level(level));
+                st.queuedSince = in.getLong();
+                if (in.getBoolean()) {
+                    st.epoch = boosts - 1;
+                    stale++;
                 }
             }
-    	}
+        }
+        nextAge = Long.MIN_VALUE;
     }
 }
\ No newline at end of file
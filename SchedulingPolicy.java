@@ -0,0 +1,93 @@
+/**
+ * A scheduling algorithm.  The OS calls enqueue whenever a SimThread enters
+ * the Queued state and scheduleThread whenever the CPU needs a new SimThread;
+ * the policy answers by calling the OS's setRunning (or preemptRunningThread).
+ * A policy may also turn preemption on and set the time quantum.
+ *
+ * The policy used by a simulation is chosen when its OS is created.  With
+ * several cores, each core has its own policy object, and the OS methods a
+ * policy calls act on that policy's core.
+ */
+public interface SchedulingPolicy {
+
+    /**
+     * Makes the policy for each core of a simulation.
+     */
+    public static interface Factory {
+
+        /**
+         * Creates a policy.
+         * @param os Reference to the simulation's OS object.
+         * @return The new policy.
+         */
+        SchedulingPolicy create(OS os);
+    }
+
+    /**
+     * The built-in scheduling policies.
+     */
+    public static enum Kind implements Factory {
+        FCFS, RR, SJF, SRTF, MLFQ, CFS;
+
+        /**
+         * Creates a policy of this kind.
+         * @param os Reference to the simulation's OS object.
+         * @return The new policy.
+         */
+        public SchedulingPolicy create(OS os) {
+            switch(this) {
+            case FCFS: return new FCFSPolicy(os);
+            case RR: return new RoundRobinPolicy(os, RoundRobinPolicy.DEFAULT_QUANTUM);
+            case SJF: return new SJFPolicy(os);
+            case SRTF: return new SRTFPolicy(os);
+            case CFS: return new CFSPolicy(os);
+            default: return new Scheduler(os);
+            }
+        }
+    };
+
+    /**
+     * The simulation calls this method when a SimThread enters the Queued state.
+     * @param st The SimThread to place into the ready queue.
+     * @param code Identifies why the thread is entering the queue:
+     *                  0 - a new thread
+     *                  1 - thread returning from Blocked state
+     *                  2 - thread has exceeded its time quantum
+     *                  3 - thread has been preempted for a higher priority thread
+     */
+    void enqueue(SimThread st, int code);
+
+    /**
+     * The simulation calls this method when it's time to schedule a thread.
+     * Use the os.setRunning() method to tell the simulation which thread to
+     * schedule (null if there is none).
+     */
+    void scheduleThread();
+
+    /**
+     * @return Number of SimThreads in the ready queue.
+     */
+    int size();
+
+    /**
+     * Removes a SimThread from the ready queue so another core can run it.
+     * Policies give up the thread they would miss least.
+     * @return The SimThread, or null if the ready queue is empty.
+     */
+    SimThread steal();
+
+    /**
+     * Writes the policy's state to a snapshot: its ready queue, in order, and
+     * anything else it remembers between calls.  Use out.putThread to write
+     * a SimThread.
+     * @param out The snapshot being written.
+     */
+    void save(Snapshot out);
+
+    /**
+     * Reads back the state written by save into a newly created policy.  The
+     * SimThreads have already been restored, so in.getThread finds them.
+     * @param in The snapshot being read.
+     */
+    void restore(Snapshot in);
+}
@@ -0,0 +1,23 @@
+/**
+ * A SimListener that ignores every event.  A headless simulation that
+ * doesn't need to watch anything uses one of these; subclasses override
+ * only the events they care about.
+ */
+public class SimAdapter implements SimListener {
+
+    public void updateStatus(SimThread t) {}
+
+    public void updatePriority(SimThread t) {}
+
+    public void updateTime(long time) {}
+
+    public void updateRunTime(SimThread t, int time) {}
+
+    public void updatePreemption(boolean tf) {}
+
+    public void updateQuantum(int core, int q) {}
+
+    public void updateFileOut(boolean tf) {}
+
+    public void updateStopped(boolean tf) {}
+}
@@ -0,0 +1,194 @@
+/**
+ * Advances the simulation's time and updates the status of the SimThreads.
+ *
+ * The Clock drives the engine one time unit at a time with step().  A headless
+ * simulation is run as a discrete-event simulation with run(), with no Clock
+ * thread and no real-time sleeping: instead of advancing one time unit at a
+ * time, the engine jumps straight to the next tick at which something can
+ * happen: the end of a Running SimThread's CPU burst, the end of a Blocked
+ * SimThread's wait time, the end of a core's time slice, or the
+ * arrival of a new SimThread (see OS.addArrivals).  Either way each
+ * tick is processed the same way, so both make the same scheduling decisions.
+ *
+ * Blocked SimThreads are kept in a TimerWheel, so a tick only touches the
+ * SimThreads that are done waiting at that tick.  Every core runs its own
+ * SimThread and has its own time slice, whose end is an absolute time fixed
+ * when the slice starts (see Core), so a tick compares it with the time
+ * instead of counting time units against the quantum.
+ */
+public class SimEngine {
+
+    private OS os;                          // Reference to OS object.
+    private SimListener listener;           // Told when time advances.
+    private TimerWheel wakeups;             // Blocked SimThreads, by wake-up tick.
+    private long now;                       // Current simulated time.
+    private CommandQueue commands;          // Commands from other threads, run between ticks.
+
+    /**
+     * Constructor.
+     * @param os Reference to the simulation's OS object.
+     * @param listener Told when time advances.
+     */
+    public SimEngine(OS os, SimListener listener)
+    {
+        this.os = os;
+        this.listener = listener;
+        wakeups = new TimerWheel();
+        now = 0;
+        commands = new CommandQueue();
+    }
+
+    /**
+     * Returns the current simulated time.
+     * @return Number of time units simulated so far.
+     */
+    public long getTime()
+    {
+        return now;
+    }
+
+    /**
+     * Hands a command to the simulation thread, to be run before the next tick.
+     * Any thread may call this.
+     * @param command The command.
+     */
+    public void post(Runnable command)
+    {
+        commands.offer(command);
+    }
+
+    /**
+     * Runs the commands posted since the last call (simulation thread only),
+     * and publishes the OS's status if they changed anything.
+     * @return true if any command was run.
+     */
+    public boolean runCommands()
+    {
+        if (commands.runAll()) {
+            os.publish();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every SimThread is done and none is still to arrive.
+     */
+    public boolean isDone()
+    {
+        return os.getThreadList().isEmpty() && os.nextArrival() == Long.MAX_VALUE;
+    }
+
+    /**
+     * Runs the simulation until every SimThread is done (and none is still to
+     * arrive), nothing is left that could ever run, or the given tick is reached.
+     * @param maxTicks Tick at which to stop the simulation.
+     * @return The simulated time at which the run stopped.
+     */
+    public long run(long maxTicks)
+    {
+        Core[] cores = os.getCores();
+        int events = 0;
+        runCommands();
+        do {
+            while (now < maxTicks && !isDone()) {
+                if ((++events & 1023) == 0) {
+                    runCommands();
+                    os.publishIfWanted();       // Keep the status fresh while somebody is watching.
+                }
+                long next = Math.min(wakeups.nextTick(), os.nextArrival());
+                boolean idle = true;
+                for (Core c : cores) {
+                    SimThread st = c.getRunning();
+                    if (st != null) {
+                        next = Math.min(next, now + st.getRunTime());
+                        idle = false;
+                    }
+                    if (st != null && c.getPreempt()) {
+                        next = Math.min(next, c.getSliceEnd());
+                    }
+                }
+                if (idle && wakeups.isEmpty() && os.nextArrival() == Long.MAX_VALUE) {
+                    break;                          // Nothing can ever become ready again.
+                }
+                next = Math.max(Math.min(next, maxTicks), now + 1);
+
+                // Nothing happens in between, so the quiet ticks are skipped in bulk.
+                if (next - now > 1) {
+                    for (Core c : cores) {
+                        if (c.getRunning() != null) {
+                            c.getRunning().keepRunning((int) (next - now - 1));
+                        }
+                    }
+                }
+                tick(next);
+            }
+        } while (now < maxTicks && runCommands());    // Commands may have added work.
+        os.publishIfWanted();
+        return now;
+    }
+
+    /**
+     * Writes the time and the Blocked SimThreads to a snapshot.
+     * @param out The snapshot being written.
+     */
+    void save(Snapshot out)
+    {
+        out.putLong(now);
+        wakeups.save(out);
+    }
+
+    /**
+     * Reads back the time and the Blocked SimThreads written by save.
+     * @param in The snapshot being read.
+     */
+    void restore(Snapshot in)
+    {
+        now = in.getLong();
+        wakeups.restore(in);
+        listener.updateTime(now);
+    }
+
+    /**
+     * Advances the simulation by one time unit.
+     */
+    public void step()
+    {
+        tick(now + 1);
+        os.publishIfWanted();
+    }
+
+    /**
+     * Processes a single tick: Blocked SimThreads first, then the Running
+     * SimThread and the time slice of each core, then load balancing.
+     * @param t The tick to process.
+     */
+    private void tick(long t)
+    {
+        now = t;
+        listener.updateTime(t);
+        os.getMetrics().setTime(t);
+        SimThread st = wakeups.advance(t);
+        while (st != null) {
+            SimThread next = st.nextTimer;
+            os.doneWaiting(st);                 // Tell OS that thread is done waiting!
+            st = next;
+        }
+        if (os.nextArrival() <= t) {
+            os.arrive(t);                       // New SimThreads arrive.
+        }
+
+        for (Core c : os.getCores()) {
+            st = c.getRunning();
+            if (st != null && !st.keepRunning()) {
+                os.systemCall(st);              // SimThread done running...issues "system call"
+                if (st.getState() == SimThread.State.BLOCKED) {
+                    wakeups.add(st, t + st.getWaitTime());
+                }
+            } else if (st != null && c.getPreempt() && t >= c.getSliceEnd()) {
+                os.interrupt(c);                // "Interrupt": the time slice is up.
+            }
+        }
+        os.balance();
+    }
+}
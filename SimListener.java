@@ -0,0 +1,63 @@
+/**
+ * Receives notice of every change to the state of the simulation.
+ * The GUI implements this interface to display the simulation; a headless
+ * simulation uses a SimAdapter (which ignores everything) or a
+ * CountingListener instead.
+ */
+public interface SimListener {
+
+    /**
+     * Called when a SimThread changes state.
+     * @param t SimThread that changed state.
+     */
+    void updateStatus(SimThread t);
+
+    /**
+     * Called when a SimThread's priority changes.
+     * @param t SimThread whose priority changed.
+     */
+    void updatePriority(SimThread t);
+
+    /**
+     * Called once for every time unit at which something happens.  Time spent
+     * Queued or Blocked is not reported thread by thread; it is worked out from
+     * the current time with SimThread.getQueueTime and SimThread.getBlockTime.
+     * @param time Current time.
+     */
+    void updateTime(long time);
+
+    /**
+     * Called when a SimThread's remaining run time changes.
+     * @param t SimThread that ran.
+     * @param time Remaining run time.
+     */
+    void updateRunTime(SimThread t, int time);
+
+    /**
+     * Called when preemption is turned on or off.
+     * @param tf Is preemption on?
+     */
+    void updatePreemption(boolean tf);
+
+    /**
+     * Called when a core's time quantum changes.
+     * @param core Core number.
+     * @param q Time quantum.
+     */
+    void updateQuantum(int core, int q);
+
+    /**
+     * Called when log file output is turned on or off by the OS
+     * (for example, because the log file could not be written).
+     * @param tf Is log file output on?
+     */
+    void updateFileOut(boolean tf);
+
+    /**
+     * Called when the simulation starts or stops other than through the
+     * controls: when it is run until a given time (see OS.runUntil), and
+     * when it gets there.
+     * @param tf Is the simulation stopped?
+     */
+    void updateStopped(boolean tf);
+}
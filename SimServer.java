@@ -0,0 +1,534 @@
+/**
+ * A small HTTP server for watching and controlling a simulation from a
+ * browser (or curl) instead of the GUI, for simulations run on machines
+ * without a display.  It uses the JDK's built-in com.sun.net.httpserver.
+ *
+ *   GET  /               a bare page that shows the event stream
+ *   GET  /status         time, counts and each core's SimThread (JSON)
+ *   GET  /threads        the live SimThreads, as the GUI's table shows them
+ *   GET  /threads?id=N   one SimThread (404 once it is done, 400 if N is not a number)
+ *   GET  /metrics        turnaround, response and waiting times, utilization
+ *   GET  /events         server-sent events, see below
+ *   POST /startStop, /step, /speed?ms=N   the GUI's controls (ms=0 for full speed;
+ *                        400 if ms is missing or negative)
+ *
+ * Any request that reads the simulation answers 503 if the simulation
+ * thread does not answer within TIMEOUT.
+ *
+ * Nothing is polled from the browser: every interval, if anybody is
+ * listening to /events, one batch is pushed to all the listeners.  A batch
+ * has only what changed since the last one: the status fields that differ,
+ * the SimThreads that changed state (at most MAX_BATCH of them, with
+ * "more": true if there were others), and the metrics if the time moved.
+ * A SimThread that was sent while live and has since exited is sent once
+ * more, as {"id":N,"state":"Done"}, so clients can drop it.
+ * The first event on a connection is the full status.
+ *
+ * The server never touches the simulation's state from its own threads:
+ * the metrics are synchronized, and the status and the SimThreads are read
+ * by commands run on the simulation thread (see OS.execute).  The events
+ * use the published SimStatus, so they don't hold up the simulation.  The
+ * controls only work when the simulation is driven by the Clock (see
+ * OS.useClock).
+ *
+ * Usage: java SimServer [-port n] [-policy KIND] [-cores n] [-threads n] [-gap n]
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class SimServer {
+
+    public static final int MAX_BATCH = 1000;       // Most SimThreads in one event.
+    public static final long TIMEOUT = 5000;        // Longest wait for the simulation thread (in milliseconds).
+
+    private static final String PAGE = "<!DOCTYPE html><html><head><title>Simulation</title></head><body>"
+        + "<button onclick=\"fetch('/startStop',{method:'POST'})\">Start/Stop</button> "
+        + "<button onclick=\"fetch('/step',{method:'POST'})\">Step</button><pre id=\"log\"></pre><script>"
+        + "var log=document.getElementById('log');new EventSource('/events').onmessage=function(e){"
+        + "log.textContent=e.data+'\\n'+log.textContent.substring(0,20000);};</script></body></html>";
+
+    private OS os;                                  // The simulation being served.
+    private HttpServer server;                      // Answers the requests.
+    private ExecutorService executor;               // Threads that answer the requests.
+    private List<HttpExchange> listeners;           // Open /events connections.
+    private Thread pusher;                          // Sends a batch of events every interval.
+    private long interval;                          // Time between batches (in milliseconds).
+    private SimStatus sent;                         // Status in the last batch (pusher thread only).
+    private BitSet shown;                           // IDs of the SimThreads sent as live and not yet as done.
+
+    /**
+     * Constructor.  The server doesn't answer until start() is called.
+     * @param os The simulation.
+     * @param port Port to listen on (0 for any free port).
+     * @param interval Time between batches of events, in milliseconds.
+     * @throws IOException if the port cannot be opened.
+     */
+    public SimServer(OS os, int port, long interval) throws IOException
+    {
+        this.os = os;
+        this.interval = interval;
+        listeners = new CopyOnWriteArrayList<HttpExchange>();
+        shown = new BitSet();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange ex) throws IOException {
+                if (!ex.getRequestURI().getPath().equals("/")) {
+                    reply(ex, 404, "text/plain", "Not found");
+                } else {
+                    reply(ex, 200, "text/html", PAGE);
+                }
+            }
+        });
+        server.createContext("/status", new Query() {
+            void serve(HttpExchange ex) throws IOException {
+                reply(ex, 200, "application/json", status(current(), null));
+            }
+        });
+        server.createContext("/metrics", new Query() {
+            void serve(HttpExchange ex) throws IOException {
+                reply(ex, 200, "application/json", metrics());
+            }
+        });
+        server.createContext("/threads", new Query() {
+            void serve(HttpExchange ex) throws IOException {
+                String id = parameter(ex, "id");
+                String json;
+                try {
+                    json = id == null ? threads(Long.MIN_VALUE, Integer.MAX_VALUE, null) : thread(Integer.parseInt(id));
+                } catch (NumberFormatException e) {
+                    reply(ex, 400, "text/plain", "Bad number: " + e.getMessage());
+                    return;
+                }
+                if (json == null) {
+                    reply(ex, 404, "text/plain", "No Thread " + id);
+                } else {
+                    reply(ex, 200, "application/json", json);
+                }
+            }
+        });
+        server.createContext("/events", new Query() {
+            void serve(HttpExchange ex) throws IOException {
+                String status = status(current(), null);
+                ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+                ex.getResponseHeaders().set("Cache-Control", "no-cache");
+                ex.sendResponseHeaders(200, 0);
+                send(ex, status);
+                listeners.add(ex);      // Left open: the pusher writes to it from now on.
+            }
+        });
+        server.createContext("/startStop", new Control() {
+            void control(HttpExchange ex) {
+                os.startStop();
+            }
+        });
+        server.createContext("/step", new Control() {
+            void control(HttpExchange ex) {
+                os.step();
+            }
+        });
+        server.createContext("/speed", new Control() {
+            void control(HttpExchange ex) {
+                int ms = Integer.parseInt(parameter(ex, "ms"));
+                if (ms < 0) {
+                    throw new IllegalArgumentException("Bad speed: " + ms + " ms");
+                }
+                os.speed(ms);
+            }
+        });
+        pusher = new Thread("SimServer events") {
+            public void run() {
+                push();
+            }
+        };
+        pusher.setDaemon(true);
+    }
+
+    /**
+     * Starts answering requests and pushing events.
+     */
+    public void start()
+    {
+        server.start();
+        pusher.start();
+    }
+
+    /**
+     * Stops the server, closing every connection.
+     */
+    public void stop()
+    {
+        pusher.interrupt();
+        server.stop(0);
+        executor.shutdown();
+        for (HttpExchange ex : listeners) {
+            ex.close();
+        }
+        listeners.clear();
+    }
+
+    /**
+     * @return Port the server listens on.
+     */
+    public int getPort() { return server.getAddress().getPort(); }
+
+    // A request that reads the simulation: 503 if the simulation thread does not answer in time.
+    private abstract class Query implements HttpHandler {
+        abstract void serve(HttpExchange ex) throws IOException;
+
+        public void handle(HttpExchange ex) throws IOException {
+            try {
+                serve(ex);
+            } catch (IllegalStateException e) {
+                reply(ex, 503, "text/plain", String.valueOf(e.getMessage()));
+            }
+        }
+    }
+
+    // A POST that works one of the controls, then answers with the status.
+    private abstract class Control extends Query {
+        abstract void control(HttpExchange ex);
+
+        void serve(HttpExchange ex) throws IOException {
+            if (!ex.getRequestMethod().equals("POST")) {
+                reply(ex, 405, "text/plain", "Use POST");
+                return;
+            }
+            try {
+                control(ex);
+            } catch (NumberFormatException e) {
+                reply(ex, 400, "text/plain", "Bad number: " + e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                reply(ex, 400, "text/plain", e.getMessage());
+                return;
+            }
+            reply(ex, 200, "application/json", status(current(), null));
+        }
+    }
+
+    // Sends one batch of changes to the /events listeners every interval.
+    private void push()
+    {
+        long since = Long.MIN_VALUE;    // Time of the last batch.
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (listeners.isEmpty()) {
+                continue;               // Nobody is watching: leave the simulation alone.
+            }
+            SimStatus status = os.getStatus();
+            if (sent != null && status(status, sent).equals("{}")) {
+                continue;               // Nothing happened.
+            }
+            StringBuilder s = new StringBuilder("{\"status\":").append(status(status, sent));
+            String threads;
+            try {
+                threads = threads(since, MAX_BATCH, shown);
+            } catch (IllegalStateException e) {
+                continue;               // The simulation thread is busy: try again next time.
+            }
+            if (threads != null) {
+                s.append(",\"threads\":").append(threads);
+            }
+            if (sent == null || status.getTime() != sent.getTime()) {
+                s.append(",\"metrics\":").append(metrics());
+            }
+            String batch = s.append('}').toString();
+            sent = status;
+            since = status.getTime();
+            for (HttpExchange ex : listeners) {
+                try {
+                    send(ex, batch);
+                } catch (IOException e) {
+                    listeners.remove(ex);   // The browser went away.
+                    ex.close();
+                }
+            }
+        }
+    }
+
+    // Writes one server-sent event.
+    private static void send(HttpExchange ex, String data) throws IOException
+    {
+        OutputStream out = ex.getResponseBody();
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void reply(HttpExchange ex, int code, String type, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Value of a query parameter (null if missing).
+    private static String parameter(HttpExchange ex, String name)
+    {
+        String query = ex.getRequestURI().getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                    return pair.substring(eq + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a status as JSON: every field, or only those that differ from an earlier status.
+     * @param status The status.
+     * @param old The earlier status (null for every field).
+     * @return The JSON object.
+     */
+    static String status(SimStatus status, SimStatus old)
+    {
+        StringBuilder s = new StringBuilder("{");
+        if (old == null || status.getTime() != old.getTime()) {
+            field(s, "time", status.getTime());
+        }
+        if (old == null || status.isStopped() != old.isStopped()) {
+            s.append(s.length() > 1 ? "," : "").append("\"stopped\":").append(status.isStopped());
+        }
+        if (old == null || status.getCreated() != old.getCreated()) {
+            field(s, "created", status.getCreated());
+        }
+        if (old == null || status.getDone() != old.getDone()) {
+            field(s, "done", status.getDone());
+        }
+        if (old == null || status.getQueued() != old.getQueued()) {
+            field(s, "queued", status.getQueued());
+        }
+        if (old == null || status.getBlocked() != old.getBlocked()) {
+            field(s, "blocked", status.getBlocked());
+        }
+        boolean cores = old == null;
+        for (int i=0; i<status.getCores() && !cores; i++) {
+            cores = status.getRunning(i) != old.getRunning(i) || status.getQuantum(i) != old.getQuantum(i);
+        }
+        if (cores) {
+            s.append(s.length() > 1 ? "," : "").append("\"cores\":[");
+            for (int i=0; i<status.getCores(); i++) {
+                s.append(i > 0 ? ",{" : "{");
+                field(s, "running", status.getRunning(i));
+                field(s, "quantum", status.getQuantum(i));
+                s.append('}');
+            }
+            s.append(']');
+        }
+        return s.append('}').toString();
+    }
+
+    // The metrics as JSON.
+    private String metrics()
+    {
+        Metrics m = os.getMetrics();
+        StringBuilder s = new StringBuilder("{");
+        field(s, "time", m.getTime());
+        s.append(",\"utilization\":").append(String.format(Locale.ROOT, "%.4f", m.getUtilization()));
+        field(s, "contextSwitches", m.getContextSwitches());
+        histogram(s, "turnaround", m.getTurnaround());
+        histogram(s, "response", m.getResponse());
+        histogram(s, "waiting", m.getWaiting());
+        return s.append('}').toString();
+    }
+
+    private static void histogram(StringBuilder s, String name, Histogram h)
+    {
+        s.append(",\"").append(name).append("\":{");
+        field(s, "n", h.getCount());
+        s.append(",\"mean\":").append(String.format(Locale.ROOT, "%.2f", h.getMean()));
+        field(s, "p50", h.getValueAtPercentile(50));
+        field(s, "p99", h.getValueAtPercentile(99));
+        field(s, "p99.9", h.getValueAtPercentile(99.9));
+        field(s, "max", h.getMax());
+        s.append('}');
+    }
+
+    /**
+     * Writes the live SimThreads that changed state at or after a time as a
+     * JSON array (read on the simulation thread), and optionally those that
+     * were written before and have exited since.
+     * @param since Earliest time of the last change of state.
+     * @param max Most live SimThreads to write; if there are more, the array
+     *            is followed by ,"more":true.
+     * @param shown IDs of the SimThreads written before and not yet written
+     *              as done, updated as they are written (null to leave out
+     *              exited SimThreads).
+     * @return The JSON array, or null if no SimThread changed state.
+     */
+    private String threads(final long since, final int max, final BitSet shown)
+    {
+        return ask(new Callable<String>() {
+            public String call() {
+                long now = os.getTime();
+                ThreadTable table = os.getThreadList();
+                StringBuilder s = new StringBuilder("[");
+                int n = 0;
+                if (shown != null) {
+                    for (int id = shown.nextSetBit(0); id >= 0; id = shown.nextSetBit(id + 1)) {
+                        if (table.get(id) == null) {
+                            s.append(n++ > 0 ? ",{" : "{");
+                            field(s, "id", id);
+                            s.append(",\"state\":\"").append(SimThread.State.DONE).append("\"}");
+                            shown.clear(id);
+                        }
+                    }
+                }
+                int live = 0;
+                for (int i=0; i<table.capacity(); i++) {
+                    SimThread st = table.at(i);
+                    if (st != null && st.getStateSince() >= since) {
+                        if (live++ == max) {
+                            return s.append("],\"more\":true").toString();
+                        }
+                        thread(s.append(n++ > 0 ? "," : ""), st, now);
+                        if (shown != null) {
+                            shown.set(st.getID());
+                        }
+                    }
+                }
+                return n == 0 && since != Long.MIN_VALUE ? null : s.append(']').toString();
+            }
+        });
+    }
+
+    // One live SimThread as JSON (null if there is none with that ID).
+    private String thread(final int id)
+    {
+        return ask(new Callable<String>() {
+            public String call() {
+                SimThread st = os.getThreadList().get(id);
+                return st == null ? null : thread(new StringBuilder(), st, os.getTime()).toString();
+            }
+        });
+    }
+
+    // The columns of the GUI's table, and a little more.
+    private static StringBuilder thread(StringBuilder s, SimThread st, long now)
+    {
+        s.append('{');
+        field(s, "id", st.getID());
+        field(s, "priority", st.getPriority());
+        s.append(",\"state\":\"").append(st.getState()).append('"');
+        field(s, "core", st.getState() == SimThread.State.RUNNING ? st.getCore() : -1);
+        field(s, "runTime", st.getRunTime());
+        field(s, "blockTime", st.getBlockTime(now));
+        field(s, "queueTime", st.getQueueTime(now));
+        field(s, "cycles", st.getCycles());
+        field(s, "arrival", st.getArrivalTime());
+        field(s, "response", st.getResponseTime());
+        field(s, "dispatches", st.getDispatches());
+        field(s, "migrations", st.getMigrations());
+        return s.append('}');
+    }
+
+    private static void field(StringBuilder s, String name, long value)
+    {
+        if (s.charAt(s.length() - 1) != '{') {
+            s.append(',');
+        }
+        s.append('"').append(name).append("\":").append(value);
+    }
+
+    // A status published just now, rather than the last one published.
+    private SimStatus current()
+    {
+        return ask(new Callable<SimStatus>() {
+            public SimStatus call() {
+                os.publish();
+                return os.getStatus();
+            }
+        });
+    }
+
+    // Reads the simulation on the simulation thread and waits for the answer.
+    private <T> T ask(Callable<T> reader)
+    {
+        FutureTask<T> task = new FutureTask<T>(reader);
+        os.execute(task);
+        try {
+            return task.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the simulation", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("The simulation thread did not answer");
+        }
+    }
+
+    /**
+     * Serves a headless simulation driven by the Clock, with randomly arriving
+     * SimThreads.  Open http://localhost:port/ and press Start.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = 8080;
+        SchedulingPolicy.Kind policy = SchedulingPolicy.Kind.MLFQ;
+        int cores = 1;
+        int threads = 1000;
+        double gap = 20;
+        for (int i=0; i<args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            String value = args[++i];
+            if (arg.equals("-port")) {
+                port = Integer.parseInt(value);
+            } else if (arg.equals("-policy")) {
+                policy = SchedulingPolicy.Kind.valueOf(value.toUpperCase());
+            } else if (arg.equals("-cores")) {
+                cores = Integer.parseInt(value);
+            } else if (arg.equals("-threads")) {
+                threads = Integer.parseInt(value);
+            } else if (arg.equals("-gap")) {
+                gap = Double.parseDouble(value);
+            } else {
+                usage();
+            }
+        }
+        OS os = new OS(new SimAdapter(), policy, cores);
+        os.useClock();
+        os.speed(10);
+        os.addArrivals(RandomArrivals.poisson(System.nanoTime(), 0, gap, threads));
+        SimServer server = new SimServer(os, port, 250);
+        server.start();
+        System.out.println("Serving on http://localhost:" + server.getPort() + "/");
+    }
+
+    private static void usage()
+    {
+        System.err.println("Usage: java SimServer [-port n] [-policy KIND] [-cores n] [-threads n] [-gap n]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * A picture of a simulation at one moment that never changes, so other
+ * threads (the GUI's, a monitoring server's, ...) can read it without
+ * locking while the simulation thread goes on.  The simulation thread
+ * publishes a new one through a volatile field (see OS.getStatus).
+ */
+public class SimStatus {
+
+    private final long time;            // Simulated time.
+    private final boolean stopped;      // Was the Clock paused?
+    private final int created;          // Number of SimThreads created.
+    private final int done;             // Number of SimThreads done.
+    private final int queued;           // Number of SimThreads Queued.
+    private final int blocked;          // Number of SimThreads Blocked.
+    private final int[] running;        // ID of the SimThread running on each core (-1 if idle).
+    private final int[] quantum;        // Time quantum of each core.
+
+    /**
+     * Constructor.
+     * @param time Simulated time.
+     * @param stopped Was the Clock paused?
+     * @param created Number of SimThreads created.
+     * @param done Number of SimThreads done.
+     * @param queued Number of SimThreads Queued.
+     * @param blocked Number of SimThreads Blocked.
+     * @param running ID of the SimThread running on each core (-1 if idle); not copied.
+     * @param quantum Time quantum of each core; not copied.
+     */
+    SimStatus(long time, boolean stopped, int created, int done, int queued, int blocked,
+              int[] running, int[] quantum)
+    {
+        this.time = time;
+        this.stopped = stopped;
+        this.created = created;
+        this.done = done;
+        this.queued = queued;
+        this.blocked = blocked;
+        this.running = running;
+        this.quantum = quantum;
+    }
+
+    /**
+     * @return Simulated time.
+     */
+    public long getTime() { return time; }
+
+    /**
+     * @return true if the simulation was paused (always true for a headless simulation between runs).
+     */
+    public boolean isStopped() { return stopped; }
+
+    /**
+     * @return Number of SimThreads created so far.
+     */
+    public int getCreated() { return created; }
+
+    /**
+     * @return Number of SimThreads that are done.
+     */
+    public int getDone() { return done; }
+
+    /**
+     * @return Number of SimThreads in the Queued state.
+     */
+    public int getQueued() { return queued; }
+
+    /**
+     * @return Number of SimThreads in the Blocked state.
+     */
+    public int getBlocked() { return blocked; }
+
+    /**
+     * @return Number of CPU cores.
+     */
+    public int getCores() { return running.length; }
+
+    /**
+     * @param core Core number.
+     * @return ID of the SimThread running on that core (-1 if idle).
+     */
+    public int getRunning(int core) { return running[core]; }
+
+    /**
+     * @param core Core number.
+     * @return Time quantum of that core.
+     */
+    public int getQuantum(int core) { return quantum[core]; }
+
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder("time " + time + (stopped ? " (stopped)" : "") + ": "
+            + created + " created, " + done + " done, " + queued + " queued, " + blocked + " blocked");
+        for (int i=0; i<running.length; i++) {
+            s.append(", CPU ").append(i).append(": ").append(running[i] < 0 ? "idle" : "Thread " + running[i]);
+        }
+        return s.toString();
+    }
+}
@@ -3,6 +3,10 @@
  * Each SimThread just maintains information about itself.  
  * SimThreads are not created as actual threads.
  * 
+ * A SimThread created with a ThreadStore keeps its CPU burst, wait time,
+ * priority, state and counters in the store's arrays instead of its own
+ * fields, and is just a handle to its slot there.
+ * 
  * @author Adam Fischbach - Widener University
  * @version Fall 2014
  */
@@ -26,7 +30,6 @@ public class SimThread {
     	}
     };
 	
-    private static Random rand = new Random();
     
     private int CPUburst;      // Length in seconds of CPU burst.
     private int waitTime;      // Length in seconds of wait time.
@@ -35,67 +38,188 @@ public class SimThread {
     private int id;            // Thread's ID number so simulation can keep track of it.
     private int totalCycles;   // Number of times thread must complete cycle of all three states.
     private int runCounter;    // How many time units thread has spent in Running state.
-    private int blockCounter;  // How many time units thread has spent in Blocked state.
-    private GUI gui;		   // Reference to GUI object.
+    private long stateSince;   // Time at which thread entered its current state.
+    private long queueTime;    // Total time spent in Queued state, not counting the current stay.
+    private ThreadStore store; // Holds the fields above instead (null if the SimThread holds them).
+    private int slot;          // Thread's slot in the store.
+    private long arrival;      // Time at which thread first entered the Queued state (-1 if not yet).
+    private long firstRun;     // Time at which thread first entered the Running state (-1 if not yet).
+    private int dispatches;    // Number of times thread entered the Running state.
+    private SimListener listener; // Told about every change to the SimThread.
+    private int core;          // Core the thread last ran on (-1 if it hasn't run yet).
+    private int affinity;      // Core the thread would like to run on (-1 for any core).
+    private int migrations;    // Number of times the thread ran on a different core than the time before.
+    private int[] bursts;      // CPU burst of each cycle (null if every cycle has the same one).
+    private int[] waits;       // Wait time after each CPU burst but the last (when bursts is not null).
+    
+    long wakeTick;             // When a Blocked thread is done waiting (used by TimerWheel).
+    SimThread nextTimer;       // Next thread in the same TimerWheel slot (used by TimerWheel).
+    long vruntime;             // Virtual runtime (used by CFSPolicy).
+    CFSPolicy cfs;             // CFSPolicy whose clock vruntime is on (null if vruntime is only a lead over the smallest).
+    long queuedSince;          // When a Queued thread joined its level's queue (used by Scheduler).
+    int epoch;                 // Number of boosts before the thread was queued (used by Scheduler).
+    
+    /**
+     * Constructor.  Creates a SimThread with random CPU burst (3-10) and wait (15-60) times.
+     * @param id SimThread's ID number.
+     * @param listener Told about every change to the SimThread.
+     * @param rand Random number generator for the burst and wait times.
+     * @param priority SimThread's priority.
+     */
+    public SimThread(int id, SimListener listener, Random rand, int priority)
+    {
+        this(null, id, listener, rand, priority);
+    }
     
     /**
      * Constructor.  Creates a SimThread with random CPU burst (3-10) and wait (15-60) times.
+     * @param store Where the SimThread's counters are kept (null to keep them in the SimThread).
      * @param id SimThread's ID number.
+     * @param listener Told about every change to the SimThread.
+     * @param rand Random number generator for the burst and wait times.
      * @param priority SimThread's priority.
      */
-    public SimThread(int id, GUI gui, int priority)
+    public SimThread(ThreadStore store, int id, SimListener listener, Random rand, int priority)
     {
-        this(id, gui, rand.nextInt(8) + 3, rand.nextInt(46) + 15, priority, 10);
+        this(store, id, listener, rand.nextInt(8) + 3, rand.nextInt(46) + 15, priority, 10);
     }
     
     /**
      * Constructor.  Creates a SimThread with given properties.
      * @param id SimThread's ID number.
+     * @param listener Told about every change to the SimThread.
      * @param burst Length (in seconds) of thread's CPU burst.
      * @param wait Length (in seconds) of thread's wait time.
      * @param priority SimThread's priority.  (Duh.)
      * @param cycles Number of times SimThread completes cycle of all three states.
      */
-    public SimThread(int id, GUI gui, int burst, int wait, int priority, int cycles)
+    public SimThread(int id, SimListener listener, int burst, int wait, int priority, int cycles)
+    {
+        this(null, id, listener, burst, wait, priority, cycles);
+    }
+    
+    /**
+     * Constructor.  Creates a SimThread with given properties.
+     * @param store Where the SimThread's counters are kept (null to keep them in the SimThread).
+     * @param id SimThread's ID number.
+     * @param listener Told about every change to the SimThread.
+     * @param burst Length (in seconds) of thread's CPU burst.
+     * @param wait Length (in seconds) of thread's wait time.
+     * @param priority SimThread's priority.
+     * @param cycles Number of times SimThread completes cycle of all three states.
+     */
+    public SimThread(ThreadStore store, int id, SimListener listener, int burst, int wait, int priority, int cycles)
     {
+        this.store = store;
+        if (store != null) {
+            slot = store.add(burst, wait, priority, cycles);
+        }
         CPUburst = burst;
         waitTime = wait;
         this.priority = priority;
         state = State.QUEUED;
         this.id = id;
         totalCycles = cycles;
-        this.gui = gui;
+        this.listener = listener;
         runCounter = burst;
-        blockCounter = wait;
-        gui.updatePriority(this);
-        gui.updateRunTime(this, burst);
-        gui.updateBlockTime(this, wait); 
+        stateSince = 0;
+        queueTime = 0;
+        arrival = -1;
+        firstRun = -1;
+        dispatches = 0;
+        core = -1;
+        affinity = -1;
+        migrations = 0;
+        listener.updatePriority(this);
+        listener.updateRunTime(this, burst);
+    }
+    
+    /**
+     * Constructor.  Creates a SimThread whose cycles each have their own CPU
+     * burst and wait time (for example, read from a Workload trace).
+     * @param store Where the SimThread's counters are kept (null to keep them in the SimThread).
+     * @param id SimThread's ID number.
+     * @param listener Told about every change to the SimThread.
+     * @param bursts CPU burst of each cycle (one per cycle).
+     * @param waits Wait time after each CPU burst but the last.
+     * @param priority SimThread's priority.
+     */
+    public SimThread(ThreadStore store, int id, SimListener listener, int[] bursts, int[] waits, int priority)
+    {
+        this(store, id, listener, bursts[0], waits.length > 0 ? waits[0] : 0, priority, bursts.length);
+        if (waits.length < bursts.length - 1) {
+            throw new IllegalArgumentException(bursts.length + " bursts need " + (bursts.length - 1) + " waits");
+        }
+        this.bursts = bursts;
+        this.waits = waits;
     }
     
     /**
      * @return Current state.
      */
-    public State getState() { return state; }
+    public State getState() { return store == null ? state : store.getState(slot); }
     
     /**
      * @return SimThread's ID number.
      */
     public int getID() { return id; }
+    
+    /**
+     * @return SimThread's slot in its ThreadStore (0 if it has none).
+     */
+    public int getSlot() { return slot; }
 
     /**
      * @return SimThread's CPU burst time.
      */
-    public int getCPUBurst() { return CPUburst; }
+    public int getCPUBurst() { return store == null ? CPUburst : store.burst[slot]; }
+    
+    /**
+     * @return Time remaining in SimThread's current CPU burst.
+     */
+    public int getRunTime() { return store == null ? runCounter : store.runCounter[slot]; }
+    
+    /**
+     * @return SimThread's wait time.
+     */
+    public int getWaitTime() { return store == null ? waitTime : store.wait[slot]; }
+    
+    /**
+     * @return Time at which SimThread entered its current state.
+     */
+    public long getStateSince() { return store == null ? stateSince : store.stateSince[slot]; }
+    
+    /**
+     * Time left in the current wait, worked out from when the wait started.
+     * @param now Current time.
+     * @return Time remaining in SimThread's current wait (the whole wait time if not Blocked).
+     */
+    public int getBlockTime(long now)
+    {
+        int wait = getWaitTime();
+        return getState() == State.BLOCKED ? (int) (wait - (now - getStateSince())) : wait;
+    }
+    
+    /**
+     * Total time spent in the Queued state, worked out from when each stay started.
+     * @param now Current time.
+     * @return Total time spent in Queued state so far.
+     */
+    public long getQueueTime(long now)
+    {
+        long queued = store == null ? queueTime : store.queueTime[slot];
+        return getState() == State.QUEUED ? queued + (now - getStateSince()) : queued;
+    }
     
     /**
      * @return Number of cycles remaining in SimThread's lifetime.
      */
-    public int getCycles() { return totalCycles; }
+    public int getCycles() { return store == null ? totalCycles : store.cycles[slot]; }
     
     /**
      * @return SimThread's current priority.
      */
-    public int getPriority() { return priority; }
+    public int getPriority() { return store == null ? priority : store.priority[slot]; }
     
     /**
      * Change SimThread's priority.
@@ -103,51 +227,246 @@ public class SimThread {
      */
     public void setPriority(int priority)
     {
-        this.priority = priority;
-        gui.updatePriority(this);
+        if (store == null) {
+            this.priority = priority;
+        } else {
+            store.priority[slot] = priority;
+        }
+        listener.updatePriority(this);
+    }
+    
+    /**
+     * @return Time at which the SimThread was created (-1 if it hasn't been started).
+     */
+    public long getArrivalTime() { return arrival; }
+    
+    /**
+     * @return Time from creation to first entering the Running state (-1 if it hasn't run yet).
+     */
+    public long getResponseTime() { return firstRun < 0 ? -1 : firstRun - arrival; }
+    
+    /**
+     * @return Number of times the SimThread was put in the Running state.
+     */
+    public int getDispatches() { return dispatches; }
+    
+    /**
+     * @return Core the SimThread is running on, or last ran on (-1 if it hasn't run yet).
+     */
+    public int getCore() { return core; }
+    
+    /**
+     * @return Core the SimThread would like to run on (-1 for any core).
+     */
+    public int getAffinity() { return affinity; }
+    
+    /**
+     * Sets the core the SimThread would like to run on.  This is a hint: the
+     * OS puts the SimThread in that core's ready queue whenever it becomes
+     * ready, but an idle core may still steal it.
+     * @param core A core number (-1 for any core).
+     */
+    public void setAffinity(int core)
+    {
+        affinity = core;
+    }
+    
+    /**
+     * @return Number of times the SimThread moved to a different core.
+     */
+    public int getMigrations() { return migrations; }
+    
+    /**
+     * Records the core the SimThread is about to run on.  If it last ran on a
+     * different core, its cache is cold there, so the given cost is added
+     * to the rest of its CPU burst.
+     * @param core The core.
+     * @param cost Extra run time for moving to a different core.
+     * @return true if the SimThread moved to a different core.
+     */
+    boolean runOn(int core, int cost)
+    {
+        boolean moved = this.core >= 0 && this.core != core;
+        this.core = core;
+        if (moved) {
+            migrations++;
+            if (cost > 0) {
+                int runTime = getRunTime() + cost;
+                if (store == null) {
+                    runCounter = runTime;
+                } else {
+                    store.runCounter[slot] = runTime;
+                }
+                listener.updateRunTime(this, runTime);
+            }
+        }
+        return moved;
     }
     
     /**
      * Change SimThread's state.
      * @param newState SimThread's new state.
+     * @param now Current time.
      */
-    public void setState(State newState)
+    public void setState(State newState, long now)
     {
-        state = newState;
-        gui.updateStatus(this);
+        if (store != null) {
+            store.setState(slot, newState, now);
+        } else {
+            if (state == State.QUEUED && newState != State.QUEUED) {   // (a new thread starts out Queued)
+                queueTime += now - stateSince;
+            }
+            state = newState;
+            stateSince = now;
+        }
+        if (arrival < 0) {
+            arrival = now;
+        }
+        if (newState == State.RUNNING) {
+            dispatches++;
+            if (firstRun < 0) {
+                firstRun = now;
+            }
+        }
+        listener.updateStatus(this);
     }
     
     /**
-     * Advances time spent in current Blocked state by one time unit.
-     * @return true if SimThread remains in Blocked state, false if SimThread is done waiting.
+     * Writes the SimThread to a snapshot (see OS.snapshot).
+     * @param out The snapshot being written.
      */
-    public boolean keepWaiting()
+    void save(Snapshot out)
     {
-    	boolean b = true;
-        blockCounter--;
-        if (blockCounter == 0) {
-            blockCounter = waitTime;
-            b = false;
+        out.putInt(id);
+        out.putInt(getCPUBurst());
+        out.putInt(getWaitTime());
+        out.putInt(getPriority());
+        out.putInt(getCycles());
+        out.putInt(getState().ordinal());
+        out.putInt(getRunTime());
+        out.putLong(getStateSince());
+        out.putLong(store == null ? queueTime : store.queueTime[slot]);
+        out.putLong(arrival);
+        out.putLong(firstRun);
+        out.putInt(dispatches);
+        out.putInt(core);
+        out.putInt(affinity);
+        out.putInt(migrations);
+        out.putLong(CFSPolicy.lead(this));
+        if (bursts == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bursts.length);
+            for (int i=0; i<bursts.length; i++) {
+                out.putInt(bursts[i]);
+                out.putInt(i < waits.length ? waits[i] : 0);
+            }
         }
-        gui.updateBlockTime(this, blockCounter);
-        return b;
     }
-    
+
+    /**
+     * Reads back a SimThread written by save.
+     * @param in The snapshot being read.
+     * @param store Where the SimThread's counters are kept (null to keep them in the SimThread).
+     * @param listener Told about every change to the SimThread.
+     * @return The SimThread, in the state it was in when the snapshot was taken.
+     */
+    static SimThread restore(Snapshot in, ThreadStore store, SimListener listener)
+    {
+        int id = in.getInt();
+        int burst = in.getInt();
+        int wait = in.getInt();
+        int priority = in.getInt();
+        int cycles = in.getInt();
+        SimThread st = new SimThread(store, id, listener, burst, wait, priority, cycles);
+        State state = State.values()[in.getInt()];
+        int runTime = in.getInt();
+        long since = in.getLong();
+        long queued = in.getLong();
+        if (store == null) {
+            st.state = state;
+            st.runCounter = runTime;
+            st.stateSince = since;
+            st.queueTime = queued;
+        } else {
+            store.state[st.slot] = (byte) state.ordinal();
+            store.runCounter[st.slot] = runTime;
+            store.stateSince[st.slot] = since;
+            store.queueTime[st.slot] = queued;
+        }
+        st.arrival = in.getLong();
+        st.firstRun = in.getLong();
+        st.dispatches = in.getInt();
+        st.core = in.getInt();
+        st.affinity = in.getInt();
+        st.migrations = in.getInt();
+        st.vruntime = in.getLong();
+        int sequence = in.getInt();
+        if (sequence >= 0) {
+            st.bursts = new int[sequence];
+            st.waits = new int[sequence];
+            for (int i=0; i<sequence; i++) {
+                st.bursts[i] = in.getInt();
+                st.waits[i] = in.getInt();
+            }
+        }
+        listener.updateRunTime(st, runTime);
+        listener.updateStatus(st);
+        return st;
+    }
+
     /**
      * Advances time spend in current Running state by one time unit.
      * @return true if SimThread stays in Running state, false if at end of CPU burst.
      */
     public boolean keepRunning()
     {
+        return keepRunning(1);
+    }
+    
+    /**
+     * Advances time spent in current Running state by the given number of time units.
+     * @param n Number of time units (no more than the remaining CPU burst).
+     * @return true if SimThread stays in Running state, false if at end of CPU burst.
+     */
+    public boolean keepRunning(int n)
+    {
+        if (store != null) {
+            boolean b = store.keepRunning(slot, n);
+            if (!b && bursts != null) {
+                nextBurst();
+                store.runCounter[slot] = store.burst[slot];
+            }
+            listener.updateRunTime(this, store.runCounter[slot]);
+            return b;
+        }
     	boolean b = true;
-        runCounter--;
+        runCounter -= n;
         if (runCounter == 0) {
-            runCounter = CPUburst;
             totalCycles--;
+            if (bursts != null) {
+                nextBurst();
+            }
+            runCounter = CPUburst;
             b = false;
         }
-        gui.updateRunTime(this, runCounter);
+        listener.updateRunTime(this, runCounter);
         return b;
     }
+    
+    // Moves on to the CPU burst of the next cycle, and the wait before it.
+    private void nextBurst()
+    {
+        int next = bursts.length - getCycles();     // Index of the next cycle.
+        if (next < bursts.length) {
+            if (store == null) {
+                CPUburst = bursts[next];
+                waitTime = waits[next - 1];
+            } else {
+                store.burst[slot] = bursts[next];
+                store.wait[slot] = waits[next - 1];
+            }
+        }
+    }
    
 }
\ No newline at end of file
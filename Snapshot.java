@@ -0,0 +1,293 @@
+/**
+ * A compact binary snapshot of a whole simulation: the time, every live
+ * SimThread's counters, each core and its policy's ready queue, the Blocked
+ * SimThreads in the TimerWheel, the random number generator and the metrics.
+ * OS.snapshot() takes one and OS.restore() carries on from it, so a long run
+ * can be paused across JVM restarts, or forked at an interesting point into
+ * several what-if runs without re-simulating from time 0.
+ *
+ * The snapshot starts with the 4 bytes "THSN" and a version byte.  After
+ * that, numbers are zigzag varints (1 byte for most counters and IDs), and
+ * a SimThread is written as its ID (-1 for none).  Each policy's state is
+ * prefixed with the policy's class name and its length, so a snapshot can
+ * be restored into a simulation with a different policy: the Queued
+ * SimThreads are then enqueued afresh instead.
+ *
+ * A snapshot read from a file is memory-mapped, not copied.  A snapshot is
+ * never changed once taken, and every restore reads it through its own
+ * view, so one snapshot can be restored into several simulations at once.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class Snapshot {
+
+    public static final byte[] MAGIC = {'T', 'H', 'S', 'N'};
+    public static final int VERSION = 7;
+
+    // Only a Random may be deserialized from a snapshot, so a crafted file cannot build anything else.
+    private static final ObjectInputFilter RANDOM_ONLY =
+        ObjectInputFilter.Config.createFilter("java.util.Random;!*");
+
+    private ByteBuffer buffer;      // Bytes written so far, or still to be read.
+    private ThreadTable threads;    // Where getThread finds SimThreads by ID (when reading).
+
+    // Starts an empty snapshot for writing.
+    Snapshot()
+    {
+        buffer = ByteBuffer.allocate(64 * 1024);
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+    }
+
+    // Wraps finished snapshot bytes, from the header on.
+    private Snapshot(ByteBuffer data, ThreadTable threads)
+    {
+        buffer = data;
+        this.threads = threads;
+    }
+
+    /**
+     * Reads a snapshot written by write, by memory-mapping the file.
+     * @param fileName Name of the snapshot file.
+     * @return The snapshot.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static Snapshot read(String fileName) throws IOException
+    {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        Snapshot s = new Snapshot(data, null);
+        if (!s.reader(null).hasHeader()) {
+            throw new IOException(fileName + " is not a snapshot file");
+        }
+        return s;
+    }
+
+    /**
+     * Writes the snapshot to a file.
+     * @param fileName Name of the snapshot file (created, or emptied first).
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(String fileName) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = buffer.duplicate();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    /**
+     * @return Size of the snapshot in bytes.
+     */
+    public int size() { return buffer.limit(); }
+
+    // Ends writing: from now on the bytes are only read.
+    void seal()
+    {
+        buffer.flip();
+        buffer = buffer.asReadOnlyBuffer();
+    }
+
+    // Returns a view of a finished snapshot for one restore, positioned at the start.
+    Snapshot reader(ThreadTable threads)
+    {
+        return new Snapshot(buffer.duplicate(), threads);
+    }
+
+    // Reads the header; returns false if the bytes are not a snapshot this version can read.
+    boolean hasHeader()
+    {
+        for (int i=0; i<MAGIC.length; i++) {
+            if (!buffer.hasRemaining() || buffer.get() != MAGIC[i]) {
+                return false;
+            }
+        }
+        return buffer.hasRemaining() && buffer.get() == VERSION;
+    }
+
+    /**
+     * Writes a number.
+     * @param v The number.
+     */
+    public void putLong(long v)
+    {
+        ensure(10);
+        v = (v << 1) ^ (v >> 63);
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    /**
+     * Writes a number.
+     * @param v The number.
+     */
+    public void putInt(int v) { putLong(v); }
+
+    /**
+     * Writes a true/false value.
+     * @param b The value.
+     */
+    public void putBoolean(boolean b) { putLong(b ? 1 : 0); }
+
+    /**
+     * Writes a reference to a SimThread, as its ID.
+     * @param st The SimThread (may be null).
+     */
+    public void putThread(SimThread st) { putLong(st == null ? -1 : st.getID()); }
+
+    /**
+     * Reads a number written by putLong.
+     * @return The number.
+     */
+    public long getLong()
+    {
+        long v = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            need(1);
+            byte b = buffer.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IllegalArgumentException("Bad varint in snapshot");
+    }
+
+    /**
+     * Reads a number written by putInt.
+     * @return The number.
+     */
+    public int getInt() { return (int) getLong(); }
+
+    /**
+     * Reads a value written by putBoolean.
+     * @return The value.
+     */
+    public boolean getBoolean() { return getLong() != 0; }
+
+    /**
+     * Reads a reference written by putThread.
+     * @return The restored SimThread with that ID (null for none).
+     */
+    public SimThread getThread()
+    {
+        int id = getInt();
+        if (id < 0) {
+            return null;
+        }
+        SimThread st = threads.get(id);
+        if (st == null) {
+            throw new IllegalArgumentException("Snapshot refers to missing Thread " + id);
+        }
+        return st;
+    }
+
+    void putString(String s)
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    String getString()
+    {
+        byte[] bytes = new byte[need(getInt())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // A Random's seed is private, so the generator is written with Java serialization.
+    void putRandom(Random rand)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(rand);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);             // (Not possible in memory.)
+        }
+        putInt(bytes.size());
+        ensure(bytes.size());
+        buffer.put(bytes.toByteArray());
+    }
+
+    Random getRandom()
+    {
+        byte[] bytes = new byte[need(getInt())];
+        buffer.get(bytes);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            in.setObjectInputFilter(RANDOM_ONLY);
+            return (Random) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException("Bad random number generator in snapshot", e);
+        }
+    }
+
+    // Leaves room for a length written later by endBlock; returns where it goes.
+    int startBlock()
+    {
+        ensure(4);
+        int mark = buffer.position();
+        buffer.putInt(0);
+        return mark;
+    }
+
+    // Fills in the length of the bytes written since startBlock.
+    void endBlock(int mark)
+    {
+        buffer.putInt(mark, buffer.position() - mark - 4);
+    }
+
+    // Reads the length written by endBlock.
+    int getBlockLength()
+    {
+        need(4);
+        return buffer.getInt();
+    }
+
+    // Skips bytes that are not needed.
+    void skip(int n)
+    {
+        buffer.position(buffer.position() + need(n));
+    }
+
+    // Checks that n more bytes can be read; returns n.
+    private int need(int n)
+    {
+        if (n < 0 || buffer.remaining() < n) {
+            throw new IllegalArgumentException("Snapshot is truncated or corrupt");
+        }
+        return n;
+    }
+
+    // Makes room for n more bytes.
+    private void ensure(int n)
+    {
+        if (buffer.remaining() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+    }
+}
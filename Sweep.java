@@ -0,0 +1,294 @@
+/**
+ * Runs a grid of headless simulations in parallel and collects the results
+ * in one CSV file, for tuning a scheduling policy.  The grid is every
+ * scheduling policy, times every quantum table (only MLFQ has one), times
+ * every workload seed.  The runs are independent: each has its own OS, its
+ * own listener and its own seeded random number generator, so they don't
+ * contend for anything and the same grid always gives the same results.
+ * The runs share a ForkJoinPool; the CSV lists them in grid order.
+ *
+ * Usage: java Sweep [-policy KIND]... [-quanta q0,q1,q2,q3,q4]... [-seeds n]
+ *                   [-threads n] [-cores n] [-parallelism n] [-out file]
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class Sweep {
+
+    public static final String HEADER =
+        "policy,quanta,seed,cores,threads,ticks,dispatches,blocks,completions,avg_wait,ms";
+
+    private List<SchedulingPolicy.Kind> policies;   // Scheduling policies to try.
+    private List<int[]> quantumTables;              // MLFQ quantum tables to try.
+    private List<Long> seeds;                       // Workload seeds to try.
+    private int threads;                            // Number of SimThreads in each workload.
+    private int cores;                              // Number of CPU cores in each simulation.
+    private long maxTicks;                          // Time at which a run is cut off.
+
+    /**
+     * Constructor.  The grid starts out empty; a dimension left empty gets its
+     * default (every policy, Scheduler.DEFAULT_QUANTA, seed 1) when run.
+     */
+    public Sweep()
+    {
+        policies = new ArrayList<SchedulingPolicy.Kind>();
+        quantumTables = new ArrayList<int[]>();
+        seeds = new ArrayList<Long>();
+        threads = 1000;
+        cores = 1;
+        maxTicks = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param policy A scheduling policy to include in the grid.
+     */
+    public void addPolicy(SchedulingPolicy.Kind policy) { policies.add(policy); }
+
+    /**
+     * @param quanta An MLFQ quantum table (one quantum per priority level) to include in the grid.
+     */
+    public void addQuantumTable(int[] quanta)
+    {
+        if (quanta.length != Scheduler.LEVELS) {
+            throw new IllegalArgumentException("Need " + Scheduler.LEVELS + " quanta, not " + quanta.length);
+        }
+        quantumTables.add(quanta.clone());
+    }
+
+    /**
+     * @param seed A workload seed to include in the grid.
+     */
+    public void addSeed(long seed) { seeds.add(seed); }
+
+    /**
+     * @param n Number of SimThreads in each workload.
+     */
+    public void setThreads(int n) { threads = n; }
+
+    /**
+     * @param n Number of CPU cores in each simulation.
+     */
+    public void setCores(int n) { cores = n; }
+
+    /**
+     * @param ticks Time at which a run is cut off.
+     */
+    public void setMaxTicks(long ticks) { maxTicks = ticks; }
+
+    /**
+     * Runs every simulation in the grid.
+     * @param parallelism Number of simulations run at the same time.
+     * @return One result per simulation, in grid order.
+     * @throws InterruptedException if interrupted while waiting for the runs.
+     */
+    public List<Result> run(int parallelism) throws InterruptedException
+    {
+        List<SchedulingPolicy.Kind> ps = policies;
+        if (ps.isEmpty()) {
+            ps = new ArrayList<SchedulingPolicy.Kind>();
+            for (SchedulingPolicy.Kind k : SchedulingPolicy.Kind.values()) {
+                ps.add(k);
+            }
+        }
+        List<int[]> qs = quantumTables;
+        if (qs.isEmpty()) {
+            qs = new ArrayList<int[]>();
+            qs.add(Scheduler.DEFAULT_QUANTA);
+        }
+        List<Long> ss = seeds;
+        if (ss.isEmpty()) {
+            ss = new ArrayList<Long>();
+            ss.add(1L);
+        }
+
+        List<Callable<Result>> runs = new ArrayList<Callable<Result>>();
+        for (SchedulingPolicy.Kind policy : ps) {
+            for (int[] quanta : qs) {
+                for (long seed : ss) {
+                    runs.add(new Run(policy, policy == SchedulingPolicy.Kind.MLFQ ? quanta : null, seed));
+                }
+                if (policy != SchedulingPolicy.Kind.MLFQ) {
+                    break;                      // Only MLFQ uses a quantum table.
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Result> results = new ArrayList<Result>();
+            for (Future<Result> f : pool.invokeAll(runs)) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Simulation failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes results as CSV, with a header line.
+     * @param results The results.
+     * @param fileName Name of the CSV file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writeCSV(List<Result> results, String fileName) throws IOException
+    {
+        PrintWriter out = new PrintWriter(fileName, "UTF-8");
+        try {
+            out.println(HEADER);
+            for (Result r : results) {
+                out.println(r.toCSV());
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Error writing " + fileName);
+        }
+    }
+
+    /**
+     * The outcome of one simulation in the grid.
+     */
+    public static class Result {
+        public final SchedulingPolicy.Kind policy;
+        public final int[] quanta;              // MLFQ quantum table (null for other policies)
+        public final long seed;
+        public final int cores;
+        public final int threads;
+        public final long ticks;                // Simulated time at which the run stopped
+        public final CountingListener counts;
+        public final long ms;                   // Real time the run took
+
+        Result(SchedulingPolicy.Kind policy, int[] quanta, long seed, int cores, int threads,
+               long ticks, CountingListener counts, long ms) {
+            this.policy = policy;
+            this.quanta = quanta;
+            this.seed = seed;
+            this.cores = cores;
+            this.threads = threads;
+            this.ticks = ticks;
+            this.counts = counts;
+            this.ms = ms;
+        }
+
+        /**
+         * @return The result as a line of CSV (see HEADER).
+         */
+        public String toCSV() {
+            StringBuilder q = new StringBuilder();
+            if (quanta == null) {
+                q.append('-');
+            } else {
+                for (int i=0; i<quanta.length; i++) {
+                    q.append(i == 0 ? "" : " ").append(quanta[i]);
+                }
+            }
+            double avgWait = counts.getCompletions() == 0 ? 0
+                : (double) counts.getQueueTime() / counts.getCompletions();
+            return policy + "," + q + "," + seed + "," + cores + "," + threads + "," + ticks + ","
+                + counts.getDispatches() + "," + counts.getBlocks() + "," + counts.getCompletions() + ","
+                + String.format(Locale.ROOT, "%.2f", avgWait) + "," + ms;
+        }
+    }
+
+    // One simulation of the grid.
+    private class Run implements Callable<Result> {
+        private SchedulingPolicy.Kind policy;
+        private int[] quanta;
+        private long seed;
+
+        Run(SchedulingPolicy.Kind policy, int[] quanta, long seed) {
+            this.policy = policy;
+            this.quanta = quanta;
+            this.seed = seed;
+        }
+
+        public Result call() {
+            SchedulingPolicy.Factory factory = policy;
+            if (quanta != null) {
+                factory = new SchedulingPolicy.Factory() {
+                    public SchedulingPolicy create(OS os) {
+                        return new Scheduler(os, quanta);
+                    }
+                };
+            }
+            CountingListener counts = new CountingListener();
+            OS os = new OS(counts, factory, cores);
+            os.setSeed(seed);
+            Random priorities = new Random(~seed);
+            for (int i=0; i<threads; i++) {
+                os.createSimThread(priorities.nextInt(Scheduler.LEVELS));
+            }
+            long start = System.nanoTime();
+            long ticks = os.run(maxTicks);
+            long ms = (System.nanoTime() - start) / 1000000;
+            return new Result(policy, quanta, seed, cores, threads, ticks, counts, ms);
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Sweep sweep = new Sweep();
+        int numSeeds = 4;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String out = "sweep.csv";
+        for (int i=0; i<args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            String value = args[++i];
+            if (arg.equals("-policy")) {
+                sweep.addPolicy(SchedulingPolicy.Kind.valueOf(value.toUpperCase()));
+            } else if (arg.equals("-quanta")) {
+                String[] parts = value.split(",");
+                int[] quanta = new int[parts.length];
+                for (int j=0; j<parts.length; j++) {
+                    quanta[j] = Integer.parseInt(parts[j].trim());
+                }
+                sweep.addQuantumTable(quanta);
+            } else if (arg.equals("-seeds")) {
+                numSeeds = Integer.parseInt(value);
+            } else if (arg.equals("-threads")) {
+                sweep.setThreads(Integer.parseInt(value));
+            } else if (arg.equals("-cores")) {
+                sweep.setCores(Integer.parseInt(value));
+            } else if (arg.equals("-parallelism")) {
+                parallelism = Integer.parseInt(value);
+            } else if (arg.equals("-out")) {
+                out = value;
+            } else {
+                usage();
+            }
+        }
+        for (int s=1; s<=numSeeds; s++) {
+            sweep.addSeed(s);
+        }
+        long start = System.nanoTime();
+        List<Result> results = sweep.run(parallelism);
+        writeCSV(results, out);
+        System.out.println(results.size() + " runs in " + (System.nanoTime() - start) / 1000000
+            + " ms, written to " + out);
+    }
+
+    private static void usage()
+    {
+        System.err.println("Usage: java Sweep [-policy KIND]... [-quanta q0,q1,q2,q3,q4]... [-seeds n]");
+        System.err.println("                  [-threads n] [-cores n] [-parallelism n] [-out file]");
+        System.exit(1);
+    }
+}
@@ -36,6 +36,7 @@ public class Test {
     public static void test10()
     {
         OS os = new OS();
+        os.setSeed(10);                 // The same threads every time.
         for(int i=0; i<5; i++) {
             os.createSimThread(0);
         }
@@ -43,4 +44,534 @@ public class Test {
         	os.createSimThread(1);
         }
     }
-}
\ No newline at end of file
+    
+    /*
+     * Run the MLFQ workload headless, as fast as possible, and report how long it took.
+     */
+    public static void testHeadless()
+    {
+        CountingListener counts = new CountingListener();
+        OS os = new OS(counts);
+        for(int i=0; i<4; i++) {
+            os.createSimThread(30, 50, 0, 10);
+        }
+        for(int i=0; i<6; i++) {
+            os.createSimThread(4);
+        }
+        long start = System.nanoTime();
+        long ticks = os.run(Long.MAX_VALUE);
+        long ms = (System.nanoTime() - start) / 1000000;
+        System.out.println("Simulated " + ticks + " time units in " + ms + " ms");
+        System.out.println(counts);
+        System.out.println(os.getMetrics());
+    }
+    
+    /*
+     * Run the same fixed workload headless under every built-in scheduling policy.
+     */
+    public static void testPolicies()
+    {
+        for (SchedulingPolicy.Kind policy : SchedulingPolicy.Kind.values()) {
+            CountingListener counts = new CountingListener();
+            OS os = new OS(counts, policy);
+            for(int i=0; i<4; i++) {
+                os.createSimThread(30, 50, 0, 10);
+            }
+            for(int i=0; i<6; i++) {
+                os.createSimThread(4 + i, 20, i % 5, 10);
+            }
+            long ticks = os.run(Long.MAX_VALUE);
+            System.out.println(policy + ": " + ticks + " time units, " + counts);
+        }
+    }
+    
+    /*
+     * Run the same fixed workload headless on 1, 2 and 4 cores, to see how the policy scales.
+     */
+    public static void testMultiCore()
+    {
+        for (int n=1; n<=4; n*=2) {
+            CountingListener counts = new CountingListener();
+            OS os = new OS(counts, SchedulingPolicy.Kind.MLFQ, n);
+            for(int i=0; i<4; i++) {
+                os.createSimThread(30, 50, 0, 10);
+            }
+            for(int i=0; i<6; i++) {
+                os.createSimThread(4 + i, 20, i % 5, 10);
+            }
+            long ticks = os.run(Long.MAX_VALUE);
+            long migrations = 0;
+            long steals = 0;
+            for (Core c : os.getCores()) {
+                migrations += c.getMigrations();
+                steals += c.getSteals();
+            }
+            System.out.println(n + " cores: " + ticks + " time units, " + migrations
+                + " migrations, " + steals + " steals, " + counts);
+        }
+    }
+    
+    /*
+     * Check that the headless tick loop allocates nothing once it has warmed up,
+     * under every built-in scheduling policy (no GUI, no logging).
+     */
+    public static void testAllocationFree()
+    {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Allocation counting not supported by this JVM");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        for (SchedulingPolicy.Kind policy : SchedulingPolicy.Kind.values()) {
+            OS os = new OS(new SimAdapter(), policy);
+            os.setSeed(1);
+            for(int i=0; i<10000; i++) {
+                os.createSimThread(i % Scheduler.LEVELS);
+            }
+            long ticks = os.run(200000);            // Warm up: let the JIT compile the loop and the queues grow.
+            long before = threads.getCurrentThreadAllocatedBytes();
+            long after = threads.getCurrentThreadAllocatedBytes();
+            long overhead = after - before;
+            long bytes = Long.MAX_VALUE;
+            long measured = 0;
+            // The JVM now and then charges a few bytes of its own bookkeeping to
+            // this thread, so take the best of a few windows.
+            for (int w=0; w<5 && bytes > 0; w++) {
+                before = threads.getCurrentThreadAllocatedBytes();
+                long end = os.run(ticks + 50000);
+                after = threads.getCurrentThreadAllocatedBytes();
+                measured = end - ticks;
+                ticks = end;
+                bytes = Math.min(bytes, after - before - overhead);
+            }
+            System.out.println(policy + ": " + bytes + " bytes allocated in " + measured + " time units");
+            if (bytes > 0) {
+                throw new AssertionError(policy + " tick loop allocated " + bytes + " bytes");
+            }
+        }
+    }
+    
+    /*
+     * Run a large workload with the counters kept in a ThreadStore, and scan them.
+     */
+    public static void testThreadStore()
+    {
+        OS os = new OS(new SimAdapter());
+        os.useThreadStore(100000);
+        for(int i=0; i<100000; i++) {
+            os.createSimThread(i % Scheduler.LEVELS);
+        }
+        ThreadStore store = os.getThreadStore();
+        for (long t=100000; t<=400000; t+=100000) {
+            os.run(t);
+            System.out.println("Time " + t + ": " + store.count(SimThread.State.QUEUED) + " queued, "
+                + store.count(SimThread.State.BLOCKED) + " blocked, " + store.count(SimThread.State.DONE) + " done");
+        }
+    }
+    
+    /*
+     * Run a workload halfway, snapshot it to a file, and carry on from the
+     * snapshot under every policy and in the original simulation.  The
+     * simulation restored with its own policy must end exactly as the original.
+     */
+    public static void testSnapshot() throws java.io.IOException
+    {
+        for (int n=1; n<=2; n++) {
+            OS os = new OS(new SimAdapter(), SchedulingPolicy.Kind.CFS, n);
+            os.setSeed(7);
+            for(int i=0; i<10000; i++) {
+                os.createSimThread(i % Scheduler.LEVELS);
+            }
+            os.run(30000);
+            String file = java.io.File.createTempFile("snapshot", ".bin").getPath();
+            os.snapshot().write(file);
+            for (int i=0; i<5000; i++) {
+                os.createSimThread(i % Scheduler.LEVELS);   // Random times come after the snapshot's.
+            }
+            long ticks = os.run(Long.MAX_VALUE);
+            
+            Snapshot snapshot = Snapshot.read(file);
+            for (SchedulingPolicy.Kind policy : SchedulingPolicy.Kind.values()) {
+                OS fork = new OS(new SimAdapter(), policy, n);
+                long start = System.nanoTime();
+                fork.restore(snapshot);
+                long us = (System.nanoTime() - start) / 1000;
+                for (int i=0; i<5000; i++) {
+                    fork.createSimThread(i % Scheduler.LEVELS);
+                }
+                long forkTicks = fork.run(Long.MAX_VALUE);
+                System.out.println(n + " cores, " + policy + " from time 30000 (" + snapshot.size() + " bytes restored in "
+                    + us + " us): " + forkTicks + " time units, " + fork.getMetrics().getContextSwitches() + " context switches");
+                if (policy == SchedulingPolicy.Kind.CFS
+                        && (forkTicks != ticks || !fork.getMetrics().toString().equals(os.getMetrics().toString()))) {
+                    throw new AssertionError("Restored run differs: " + forkTicks + " time units, not " + ticks);
+                }
+            }
+            try (java.io.RandomAccessFile f = new java.io.RandomAccessFile(file, "rw")) {
+                f.setLength(f.length() / 2);
+            }
+            try {
+                new OS(new SimAdapter(), SchedulingPolicy.Kind.CFS, n).restore(Snapshot.read(file));
+                throw new AssertionError("Truncated snapshot restored");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+            new java.io.File(file).delete();
+        }
+        OS mlfq = new OS(new SimAdapter(), SchedulingPolicy.Kind.MLFQ);
+        mlfq.setSeed(7);
+        for(int i=0; i<1000; i++) {
+            mlfq.createSimThread(i % Scheduler.LEVELS);
+        }
+        mlfq.run(3000);
+        OS fork = new OS(new SimAdapter(), SchedulingPolicy.Kind.CFS);
+        fork.restore(mlfq.snapshot());      // The Running SimThread is unknown to CFS.
+        System.out.println("MLFQ snapshot with Thread " + fork.getStatus().getRunning(0) + " running, restored into CFS: "
+            + fork.run(Long.MAX_VALUE) + " time units");
+    }
+
+    /*
+     * Replay a small workload trace with varying bursts and staggered arrivals,
+     * as text and as binary.  Both must give the same run.
+     */
+    public static void testWorkload() throws java.io.IOException
+    {
+        java.io.File csv = java.io.File.createTempFile("workload", ".csv");
+        java.io.File bin = java.io.File.createTempFile("workload", ".bin");
+        try (java.io.PrintWriter out = new java.io.PrintWriter(csv)) {
+            out.println("# arrival,priority,burst,wait,burst,wait,...,burst");
+            java.util.Random rand = new java.util.Random(3);
+            for (int i=0; i<1000; i++) {
+                StringBuilder line = new StringBuilder(i * 40 + "," + i % Scheduler.LEVELS);
+                int cycles = 1 + rand.nextInt(10);
+                for (int c=0; c<cycles; c++) {
+                    line.append(",").append(1 + rand.nextInt(c % 3 == 0 ? 40 : 4));
+                    if (c < cycles - 1) {
+                        line.append(",").append(rand.nextInt(60));
+                    }
+                }
+                out.println(line);
+            }
+        }
+        Workload.toBinary(csv.getPath(), bin.getPath());
+        long[] ticks = new long[2];
+        for (int k=0; k<2; k++) {
+            String file = k == 0 ? csv.getPath() : bin.getPath();
+            CountingListener counts = new CountingListener();
+            OS os = new OS(counts);
+            os.setWorkload(new Workload(file));
+            ticks[k] = os.run(Long.MAX_VALUE);
+            System.out.println(file.substring(file.lastIndexOf('.')) + " (" + new java.io.File(file).length()
+                + " bytes): " + ticks[k] + " time units, " + counts);
+            System.out.println(os.getMetrics());
+        }
+        csv.delete();
+        bin.delete();
+        if (ticks[0] != ticks[1]) {
+            throw new AssertionError("Text and binary traces differ");
+        }
+    }
+
+    /*
+     * Keep SimThreads arriving (Poisson, then bursty at the same average rate)
+     * at rising load, to see how waiting time grows in an open system.
+     */
+    public static void testOpenSystem()
+    {
+        double work = 6.5 * 10;                     // Mean CPU time of a random SimThread.
+        for (double load = 0.5; load < 1; load += 0.2) {
+            double gap = work / load;
+            for (int bursty=0; bursty<2; bursty++) {
+                OS os = new OS(new SimAdapter());
+                os.setSeed(11);
+                os.addArrivals(bursty == 0 ? RandomArrivals.poisson(5, 0, gap, 5000)
+                    : new RandomArrivals(5, 0, 5 * gap, gap / 1.8, 20 * gap, 20 * gap, 5000));
+                long ticks = os.run(Long.MAX_VALUE);
+                Metrics m = os.getMetrics();
+                System.out.println(String.format(java.util.Locale.ROOT, "load %.1f %-7s %8d time units, utilization %.1f%%,"
+                    + " waiting p50=%d p99=%d, response p99=%d", load, bursty == 0 ? "Poisson" : "bursty", ticks,
+                    100 * m.getUtilization(), m.getWaiting().getValueAtPercentile(50),
+                    m.getWaiting().getValueAtPercentile(99), m.getResponse().getValueAtPercentile(99)));
+            }
+        }
+    }
+
+    /*
+     * Run a simulation on a background thread while this thread creates
+     * SimThreads, switches the policy and watches the published status.
+     */
+    public static void testCommands() throws InterruptedException
+    {
+        final OS os = new OS(new SimAdapter());
+        os.setSeed(2);
+        os.addArrivals(RandomArrivals.poisson(9, 0, 70, 20000));
+        Thread sim = new Thread() {
+            public void run() {
+                os.run(Long.MAX_VALUE);
+            }
+        };
+        sim.start();
+        for (int i=0; i<1000; i++) {
+            os.createSimThread(i % Scheduler.LEVELS);       // Posted while the simulation runs.
+            if (i == 500) {
+                os.setPolicy(SchedulingPolicy.Kind.CFS);
+            }
+            if (i % 250 == 0) {
+                System.out.println(os.getStatus());
+                Thread.sleep(5);
+            }
+        }
+        sim.join();
+        os.run(Long.MAX_VALUE);                             // Anything posted after the run ended.
+        SimStatus status = os.getStatus();
+        System.out.println(status);
+        if (status.getCreated() != 21000 || status.getDone() != 21000) {
+            throw new AssertionError("Lost commands: " + status);
+        }
+    }
+
+    /*
+     * Turn the log file on and off twice while a simulation runs, and write
+     * a message longer than the writer's buffer.  Turning the log off closes
+     * the file, so it is complete when the call returns.
+     */
+    public static void testLog() throws java.io.IOException
+    {
+        java.io.File file = new java.io.File(OS.FILE_NAME);
+        try {
+            OS os = new OS(new SimAdapter());
+            os.setSeed(10);
+            os.addArrivals(RandomArrivals.poisson(9, 0, 70, 20));
+            for (int i=0; i<2; i++) {
+                os.setFileOut(true);
+                os.run(os.getTime() + 500);
+                os.setFileOut(false);
+                System.out.println("log " + i + ": " + java.nio.file.Files.readAllLines(file.toPath()).size() + " lines");
+            }
+            StringBuilder big = new StringBuilder();
+            while (big.length() < 200000) {
+                big.append("0123456789");
+            }
+            os.setFileOut(true);
+            os.print(big.toString());
+            os.setFileOut(false);
+            long length = file.length();
+            System.out.println("log with a long message: " + length + " bytes");
+            if (length != big.length() + 1) {
+                throw new AssertionError("Lost part of a long message: " + length + " bytes");
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /*
+     * Run the MLFQ workload, switching halfway to a table of 8 priority
+     * levels loaded from a file, with a SimThread whose priority is outside
+     * both tables.
+     */
+    public static void testLevels() throws java.io.IOException
+    {
+        java.io.File file = java.io.File.createTempFile("levels", ".csv");
+        try (java.io.PrintWriter out = new java.io.PrintWriter(file)) {
+            out.println("# quantum,expire,unblock from level 0 up");
+            out.println("2,0,2");
+            for (int level=1; level<7; level++) {
+                out.println(2 << level);
+            }
+            out.println("200,5,7");
+        }
+        try {
+            CountingListener counts = new CountingListener();
+            OS os = new OS(counts, SchedulingPolicy.Kind.MLFQ);
+            for(int i=0; i<4; i++) {
+                os.createSimThread(30, 50, 0, 10);
+            }
+            for(int i=0; i<6; i++) {
+                os.createSimThread(4 + i, 20, i % 5, 10);
+            }
+            os.createSimThread(10, 10, 99, 5);
+            os.run(800);
+            LevelTable levels = LevelTable.load(file.getPath());
+            os.setLevels(levels);
+            long ticks = os.run(Long.MAX_VALUE);
+            System.out.println("levels " + levels + ": " + ticks + " time units, " + counts);
+            try (java.io.PrintWriter out = new java.io.PrintWriter(file)) {
+                out.println("2,1,1");               // Expiring its quantum would raise a thread.
+                out.println("4");
+            }
+            try {
+                LevelTable.load(file.getPath());
+                throw new AssertionError("Loaded a table whose quantum raises a thread");
+            } catch (java.io.IOException e) {
+                System.out.println("rejected: " + e.getMessage().substring(file.getPath().length() + 2));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /*
+     * Run a workload in which I/O-bound threads keep the CPU-bound ones
+     * waiting at the lowest level, without and with aging and boosts, and
+     * report the tail of the waiting time.
+     */
+    public static void testAging()
+    {
+        int[] none = new int[Scheduler.LEVELS];
+        int[] age = {100, 100, 100, 100, 0};
+        LevelTable[] tables = {LevelTable.DEFAULT, LevelTable.DEFAULT.withAging(age, 0),
+                               LevelTable.DEFAULT.withAging(none, 500), LevelTable.DEFAULT.withAging(age, 500)};
+        String[] names = {"neither", "aging", "boost", "both"};
+        for (int t=0; t<tables.length; t++) {
+            final LevelTable table = tables[t];
+            OS os = new OS(new SimAdapter(), new SchedulingPolicy.Factory() {
+                public SchedulingPolicy create(OS os) {
+                    return new Scheduler(os, table);
+                }
+            }, 1);
+            for (int i=0; i<4; i++) {
+                os.createSimThread(50, 10, 0, 5);       // CPU-bound.
+            }
+            for (int i=0; i<3; i++) {
+                os.createSimThread(3, 5, 4, 300);       // I/O-bound: together they want more than the CPU.
+            }
+            long ticks = os.run(Long.MAX_VALUE);
+            Histogram waiting = os.getMetrics().getWaiting();
+            System.out.println(String.format(java.util.Locale.ROOT, "%-8s %5d time units, waiting p50=%d p99=%d max=%d, boosts=%d",
+                names[t], ticks, waiting.getValueAtPercentile(50), waiting.getValueAtPercentile(99), waiting.getMax(),
+                ((Scheduler) os.getCores()[0].getPolicy()).getBoosts()));
+        }
+    }
+
+    /*
+     * Check that a seeded run on 4 cores repeats exactly, then that a run
+     * whose second try gets another seed is caught, and where.
+     */
+    public static void testDeterminism() throws java.io.IOException
+    {
+        final int[] tries = {0};
+        for (final boolean same : new boolean[] {true, false}) {
+            RunVerifier result = RunVerifier.verify(new RunVerifier.Scenario() {
+                public OS run(String traceFile) throws java.io.IOException {
+                    OS os = new OS(new SimAdapter(), SchedulingPolicy.Kind.MLFQ, 4);
+                    os.startTrace(traceFile);
+                    os.setSeed(same || tries[0]++ == 0 ? 24 : 25);
+                    os.addArrivals(RandomArrivals.poisson(7, 0, 5, 2000));
+                    os.run(Long.MAX_VALUE);
+                    return os;
+                }
+            });
+            System.out.println(result);
+        }
+    }
+
+    /*
+     * Drive 200 randomly arriving threads (Poisson, mean gap 70) under the
+     * default MLFQ policy with the Clock: 500 ticks in real time at x10, then
+     * fast-forward to time 2000, then at full speed until every thread is done.
+     * Started again with nothing to run, the Clock must wait for another thread.
+     */
+    public static void testFastForward() throws InterruptedException
+    {
+        final java.util.concurrent.Semaphore halts = new java.util.concurrent.Semaphore(0);
+        OS os = new OS(new SimAdapter() {
+            public void updateStopped(boolean tf) {
+                if (tf) {
+                    halts.release();
+                }
+            }
+        });
+        os.setSeed(10);
+        os.useClock();
+        os.addArrivals(RandomArrivals.poisson(9, 0, 70, 200));
+        os.speed(1);
+        os.multiplier(10);
+        long start = System.nanoTime();
+        os.runUntil(500);
+        halts.acquire();
+        System.out.println("real time x10: " + os.getStatus() + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        os.speed(0);
+        os.runUntil(2000);
+        halts.acquire();
+        System.out.println("fast-forward:  " + os.getStatus());
+        start = System.nanoTime();
+        os.runUntilDone();
+        halts.acquire();
+        SimStatus status = os.getStatus();
+        System.out.println("until done:    " + status + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        if (status.getDone() != status.getCreated() || status.getCreated() != 200) {
+            throw new AssertionError("Not done: " + status);
+        }
+        os.startStop();                 // Runs on with nothing to run, until told otherwise.
+        Thread.sleep(100);
+        if (os.getStatus().isStopped()) {
+            throw new AssertionError("Stopped with nothing to run: " + os.getStatus());
+        }
+        os.createSimThread(0);
+        os.runUntilDone();
+        halts.acquire();
+        System.out.println("one more:      " + os.getStatus());
+        if (os.getStatus().getDone() != 201) {
+            throw new AssertionError("Not done: " + os.getStatus());
+        }
+    }
+
+    /*
+     * Serve a simulation driven by the Clock on localhost, work its controls
+     * over HTTP and read a few batches of events.
+     */
+    public static void testServer() throws java.io.IOException, InterruptedException
+    {
+        OS os = new OS(new SimAdapter(), SchedulingPolicy.Kind.RR, 2);
+        os.useClock();
+        os.speed(1);
+        os.addArrivals(RandomArrivals.poisson(3, 0, 5, 200));
+        SimServer server = new SimServer(os, 0, 50);
+        server.start();
+        String base = "http://localhost:" + server.getPort();
+        System.out.println(fetch(base + "/startStop", "POST"));
+        Thread.sleep(200);
+        System.out.println(fetch(base + "/status", "GET"));
+        System.out.println(fetch(base + "/metrics", "GET"));
+        String threads = fetch(base + "/threads", "GET");
+        System.out.println(threads.substring(0, Math.min(threads.length(), 200)) + "...");
+        java.net.HttpURLConnection events = (java.net.HttpURLConnection) java.net.URI.create(base + "/events").toURL().openConnection();
+        java.io.BufferedReader in = new java.io.BufferedReader(new java.io.InputStreamReader(events.getInputStream(),
+            java.nio.charset.StandardCharsets.UTF_8));
+        for (int n=0; n<3; ) {
+            String line = in.readLine();
+            if (line.startsWith("data: ")) {
+                System.out.println("event: " + line.substring(6, Math.min(line.length(), 160)) + "...");
+                n++;
+            }
+        }
+        System.out.println(fetch(base + "/threads?id=abc", "GET"));
+        System.out.println(fetch(base + "/speed?ms=-1", "POST"));
+        System.out.println(fetch(base + "/speed?ms=abc", "POST"));
+        String fast = fetch(base + "/speed?ms=0", "POST");
+        System.out.println(fast.substring(0, Math.min(fast.length(), 60)) + "...");
+        while (true) {
+            String line = in.readLine();
+            int done = line.indexOf("\"state\":\"Done\"");
+            if (done >= 0) {
+                System.out.println("event: ..." + line.substring(line.lastIndexOf('{', done), done + 15) + "...");
+                break;
+            }
+        }
+        events.disconnect();
+        os.startStop();
+        server.stop();
+    }
+
+    private static String fetch(String url, String method) throws java.io.IOException
+    {
+        java.net.HttpURLConnection c = (java.net.HttpURLConnection) java.net.URI.create(url).toURL().openConnection();
+        c.setRequestMethod(method);
+        try (java.io.InputStream in = c.getResponseCode() >= 400 ? c.getErrorStream() : c.getInputStream()) {
+            return c.getResponseCode() + " " + new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * A ready queue ordered by a key of each SimThread, such as its CPU burst:
+ * a binary heap in an array, so taking the first SimThread and adding one
+ * take O(log n) time and allocate nothing once the array is big enough.
+ *
+ * The last SimThread (the one with the greatest key) can also be taken, for
+ * another core to steal.  It is always a leaf, so only the lower half of
+ * the array is scanned for it, which is fine for something done only when
+ * a core runs out of work.
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class ThreadHeap {
+
+    private SimThread[] heap;               // The heap, smallest first
+    private int size;                       // Number of SimThreads in the heap
+    private Comparator<SimThread> order;    // Order of the SimThreads (must never call two equal)
+
+    /**
+     * Constructor.
+     * @param order Order of the SimThreads; only the same SimThread may compare equal.
+     */
+    public ThreadHeap(Comparator<SimThread> order)
+    {
+        this.order = order;
+        heap = new SimThread[16];
+        size = 0;
+    }
+
+    /**
+     * @return Number of SimThreads in the heap.
+     */
+    public int size() { return size; }
+
+    /**
+     * @param i An index, 0 to size()-1.
+     * @return The SimThread at that index of the array (adding them back in
+     *         index order rebuilds the same heap).
+     */
+    public SimThread at(int i) { return heap[i]; }
+
+    /**
+     * Adds a SimThread.
+     * @param st The SimThread.
+     */
+    public void add(SimThread st)
+    {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        siftUp(size++, st);
+    }
+
+    /**
+     * Removes the first SimThread.
+     * @return The SimThread, or null if the heap is empty.
+     */
+    public SimThread poll()
+    {
+        return size == 0 ? null : removeAt(0);
+    }
+
+    /**
+     * Removes the last SimThread.
+     * @return The SimThread, or null if the heap is empty.
+     */
+    public SimThread pollLast()
+    {
+        if (size == 0) {
+            return null;
+        }
+        int last = size >>> 1;          // The first leaf.
+        for (int i=last+1; i<size; i++) {
+            if (order.compare(heap[i], heap[last]) > 0) {
+                last = i;
+            }
+        }
+        return removeAt(last);
+    }
+
+    // Removes the SimThread at an index, filling the hole with the last one.
+    private SimThread removeAt(int i)
+    {
+        SimThread st = heap[i];
+        SimThread moved = heap[--size];
+        heap[size] = null;
+        if (i < size) {
+            siftDown(i, moved);
+            if (heap[i] == moved) {
+                siftUp(i, moved);
+            }
+        }
+        return st;
+    }
+
+    // Puts a SimThread at an index, moving it up past bigger parents.
+    private void siftUp(int i, SimThread st)
+    {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (order.compare(st, heap[parent]) >= 0) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = st;
+    }
+
+    // Puts a SimThread at an index, moving it down past smaller children.
+    private void siftDown(int i, SimThread st)
+    {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && order.compare(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (order.compare(heap[child], st) >= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = st;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * An optional backend for the per-thread counters of a simulation, kept as
+ * a structure of arrays: one int array per counter, a byte array of states
+ * and long arrays of times, all indexed by a slot number.  A SimThread
+ * created with a store is a handle holding its slot, and its getters and
+ * setters read and write these arrays, so the counters of all SimThreads
+ * sit next to each other in memory.  Scanning them (as count does) touches
+ * memory sequentially instead of chasing a pointer per SimThread.
+ *
+ * The trade-off: the engine itself only touches the few SimThreads that
+ * change at each tick, and each of those touches several arrays instead of
+ * one object, so a simulation that doesn't scan its threads runs faster
+ * without a store.  See OS.useThreadStore.
+ *
+ * Slots are handed out in order and never reused, so a handle stays valid
+ * after its SimThread is done.  The arrays double in size as needed.
+ */
+public class ThreadStore {
+
+    private static final SimThread.State[] STATES = SimThread.State.values();
+
+    int[] burst;            // Length of CPU burst.
+    int[] wait;             // Length of wait time.
+    int[] runCounter;       // Time remaining in current CPU burst.
+    int[] priority;
+    int[] cycles;           // Number of cycles remaining.
+    byte[] state;           // SimThread.State ordinal.
+    long[] stateSince;      // Time at which the current state was entered.
+    long[] queueTime;       // Time spent Queued, not counting the current stay.
+    private int size;       // Number of slots handed out.
+
+    /**
+     * Constructor.
+     * @param capacity Number of slots to make room for at first.
+     */
+    public ThreadStore(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+        burst = new int[capacity];
+        wait = new int[capacity];
+        runCounter = new int[capacity];
+        priority = new int[capacity];
+        cycles = new int[capacity];
+        state = new byte[capacity];
+        stateSince = new long[capacity];
+        queueTime = new long[capacity];
+        size = 0;
+    }
+
+    /**
+     * @return Number of slots handed out.
+     */
+    public int size() { return size; }
+
+    /**
+     * Hands out a slot for a new SimThread, in the Queued state.
+     * @param burst Length of CPU burst.
+     * @param wait Length of wait time.
+     * @param priority Priority.
+     * @param cycles Number of cycles.
+     * @return The slot.
+     */
+    int add(int burst, int wait, int priority, int cycles)
+    {
+        if (size == this.burst.length) {
+            grow(size * 2);
+        }
+        int slot = size++;
+        this.burst[slot] = burst;
+        this.wait[slot] = wait;
+        this.runCounter[slot] = burst;
+        this.priority[slot] = priority;
+        this.cycles[slot] = cycles;
+        this.state[slot] = (byte) SimThread.State.QUEUED.ordinal();
+        return slot;
+    }
+
+    /**
+     * @param slot A slot.
+     * @return The state of the SimThread in that slot.
+     */
+    SimThread.State getState(int slot) { return STATES[state[slot]]; }
+
+    /**
+     * Counts the SimThreads in a state.
+     * @param s The state.
+     * @return Number of SimThreads in that state.
+     */
+    public int count(SimThread.State s)
+    {
+        byte b = (byte) s.ordinal();
+        byte[] st = state;
+        int n = 0;
+        for (int i=0; i<size; i++) {
+            if (st[i] == b) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Changes the state of the SimThread in a slot.
+     * @param slot A slot.
+     * @param s The new state.
+     * @param now Current time.
+     */
+    void setState(int slot, SimThread.State s, long now)
+    {
+        byte queued = (byte) SimThread.State.QUEUED.ordinal();
+        if (state[slot] == queued && s != SimThread.State.QUEUED) {     // (a new thread starts out Queued)
+            queueTime[slot] += now - stateSince[slot];
+        }
+        state[slot] = (byte) s.ordinal();
+        stateSince[slot] = now;
+    }
+
+    /**
+     * Advances the time the SimThread in a slot has been Running.
+     * @param slot A slot.
+     * @param n Number of time units (no more than the remaining CPU burst).
+     * @return true if SimThread stays in Running state, false if at end of CPU burst.
+     */
+    boolean keepRunning(int slot, int n)
+    {
+        int left = runCounter[slot] - n;
+        if (left == 0) {
+            runCounter[slot] = burst[slot];
+            cycles[slot]--;
+            return false;
+        }
+        runCounter[slot] = left;
+        return true;
+    }
+
+    // Makes room for at least n slots.
+    void grow(int n)
+    {
+        if (n <= burst.length) {
+            return;
+        }
+        burst = java.util.Arrays.copyOf(burst, n);
+        wait = java.util.Arrays.copyOf(wait, n);
+        runCounter = java.util.Arrays.copyOf(runCounter, n);
+        priority = java.util.Arrays.copyOf(priority, n);
+        cycles = java.util.Arrays.copyOf(cycles, n);
+        state = java.util.Arrays.copyOf(state, n);
+        stateSince = java.util.Arrays.copyOf(stateSince, n);
+        queueTime = java.util.Arrays.copyOf(queueTime, n);
+    }
+}
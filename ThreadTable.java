@@ -0,0 +1,140 @@
+/**
+ * The table of all live SimThreads, keyed by ID.
+ *
+ * An open-addressing hash table on primitive int keys (linear probing), so
+ * looking up, adding and removing a SimThread take constant time without
+ * boxing the ID, and the table grows as needed.  Removal shifts later
+ * entries back rather than leaving tombstones, so the table never fills up
+ * with deleted slots however many SimThreads come and go.
+ *
+ * To visit every SimThread, loop over the slots from 0 to capacity()-1 and
+ * skip the slots where at() returns null.
+ */
+public class ThreadTable {
+
+    private int[] keys;             // ID of the SimThread in each slot.
+    private SimThread[] threads;    // SimThread in each slot (null if slot is empty).
+    private int size;               // Number of SimThreads in the table.
+
+    /**
+     * Constructor.
+     */
+    public ThreadTable()
+    {
+        keys = new int[16];
+        threads = new SimThread[16];
+        size = 0;
+    }
+
+    /**
+     * @return Number of SimThreads in the table.
+     */
+    public int size() { return size; }
+
+    /**
+     * @return true if the table is empty.
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * @return Number of slots in the table.
+     */
+    public int capacity() { return threads.length; }
+
+    /**
+     * @param slot A slot number, 0 to capacity()-1.
+     * @return The SimThread in that slot, or null if the slot is empty.
+     */
+    public SimThread at(int slot) { return threads[slot]; }
+
+    /**
+     * Finds the SimThread with the given ID.
+     * @param id A SimThread ID.
+     * @return The SimThread, or null if no live SimThread has that ID.
+     */
+    public SimThread get(int id)
+    {
+        int mask = threads.length - 1;
+        for (int i = hash(id) & mask; threads[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                return threads[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a SimThread to the table.
+     * @param st The SimThread (its ID must not already be in the table).
+     */
+    public void add(SimThread st)
+    {
+        if (2 * (size + 1) > threads.length) {
+            resize(threads.length * 2);
+        }
+        insert(st.getID(), st);
+        size++;
+    }
+
+    /**
+     * Removes a SimThread from the table.
+     * @param st The SimThread to remove.
+     * @return true if the SimThread was in the table.
+     */
+    public boolean remove(SimThread st)
+    {
+        int mask = threads.length - 1;
+        int id = st.getID();
+        int i = hash(id) & mask;
+        while (threads[i] != null && keys[i] != id) {
+            i = (i + 1) & mask;
+        }
+        if (threads[i] == null) {
+            return false;
+        }
+        // Shift back any later entry whose probe sequence passes through the hole.
+        int hole = i;
+        for (int j = (i + 1) & mask; threads[j] != null; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                threads[hole] = threads[j];
+                hole = j;
+            }
+        }
+        threads[hole] = null;
+        size--;
+        return true;
+    }
+
+    private void insert(int id, SimThread st)
+    {
+        int mask = threads.length - 1;
+        int i = hash(id) & mask;
+        while (threads[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = id;
+        threads[i] = st;
+    }
+
+    private void resize(int capacity)
+    {
+        int[] oldKeys = keys;
+        SimThread[] oldThreads = threads;
+        keys = new int[capacity];
+        threads = new SimThread[capacity];
+        for (int i=0; i<oldThreads.length; i++) {
+            if (oldThreads[i] != null) {
+                insert(oldKeys[i], oldThreads[i]);
+            }
+        }
+    }
+
+    // Spreads consecutive IDs across the table.
+    private static int hash(int id)
+    {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
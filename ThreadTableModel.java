@@ -0,0 +1,132 @@
+/**
+ * The table model behind the GUI's table of SimThreads.  Row i shows the
+ * SimThread with ID i.  The JTable only asks the model for the rows that are
+ * visible, so the cost of drawing the table doesn't depend on how many
+ * SimThreads there are.  Remaining block time and total queue time are
+ * worked out from the current time when a cell is drawn, so they don't
+ * have to be updated for every SimThread at every time unit.
+ *
+ * The model is only used on the event dispatch thread.
+ */
+
+import javax.swing.table.AbstractTableModel;
+
+public class ThreadTableModel extends AbstractTableModel {
+
+    public static final long serialVersionUID = 1;
+
+    private static final String[] COLUMNS = {"Thread", "Priority", "State", "CPU", "Run Time", "Blocked", "Queued"};
+
+    private Row[] rows;     // Displayed state of each SimThread, by ID.
+    private int numRows;    // Number of rows in the table.
+    private long time;      // Current simulated time.
+
+    /**
+     * Constructor.
+     */
+    public ThreadTableModel()
+    {
+        rows = new Row[16];
+        numRows = 0;
+        time = 0;
+    }
+
+    public int getRowCount() { return numRows; }
+
+    public int getColumnCount() { return COLUMNS.length; }
+
+    public String getColumnName(int col) { return COLUMNS[col]; }
+
+    public Object getValueAt(int row, int col)
+    {
+        Row r = rows[row];
+        switch(col) {
+        case 0: return r.id;
+        case 1: return r.priority;
+        case 2: return r.state == null ? "NONE" : r.state.toString();
+        case 3: return r.core < 0 ? "-" : Integer.toString(r.core);
+        case 4: return r.runTime;
+        case 5: return r.state == SimThread.State.BLOCKED ? r.waitTime - (time - r.since) : r.waitTime;
+        default: return r.state == SimThread.State.QUEUED ? r.queueTime + (time - r.since) : r.queueTime;
+        }
+    }
+
+    /**
+     * @param row A row number.
+     * @return The state of the SimThread displayed in that row (null if not known yet).
+     */
+    public SimThread.State getState(int row) { return rows[row].state; }
+
+    /**
+     * Sets the time used to work out block and queue times.  Listeners are not
+     * told; the caller fires one update for all the rows changed in a frame.
+     * @param time Current simulated time.
+     */
+    public void setTime(long time) { this.time = time; }
+
+    /**
+     * Makes sure the table has a row for each SimThread ID below n.
+     * @param n Number of SimThreads created so far.
+     */
+    public void setRowCount(int n)
+    {
+        if (n <= numRows) {
+            return;
+        }
+        if (n > rows.length) {
+            Row[] bigger = new Row[Math.max(n, rows.length * 2)];
+            System.arraycopy(rows, 0, bigger, 0, numRows);
+            rows = bigger;
+        }
+        int first = numRows;
+        for (int i=first; i<n; i++) {
+            rows[i] = new Row(i);
+        }
+        numRows = n;
+        fireTableRowsInserted(first, n - 1);
+    }
+
+    /**
+     * Copies the given state into the row for its SimThread.  Listeners are not
+     * told; the caller fires one update for all the rows changed in a frame.
+     * @param r The latest state of a SimThread.
+     */
+    public void set(Row r)
+    {
+        rows[r.id].copy(r);
+    }
+
+    /**
+     * The displayed state of a single SimThread.
+     */
+    static class Row {
+        int id;
+        int priority = -1;
+        SimThread.State state = null;
+        long since = 0;             // Time at which SimThread entered its current state
+        int runTime = -1;
+        int waitTime = -1;
+        long queueTime = 0;         // Time spent Queued before entering its current state
+        int core = -1;              // Core the SimThread runs on, or last ran on
+
+        // Used by the GUI while the row is being updated by the simulation.
+        boolean dirty = false;
+        int prevQueued = -1;        // Neighbours in the GUI's list of Queued SimThreads
+        int nextQueued = -1;
+
+        Row(int id) {
+            this.id = id;
+        }
+
+        void copy(Row r) {
+            id = r.id;
+            priority = r.priority;
+            state = r.state;
+            since = r.since;
+            runTime = r.runTime;
+            waitTime = r.waitTime;
+            queueTime = r.queueTime;
+            core = r.core;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * A hierarchical timing wheel holding the Blocked SimThreads, keyed by the
+ * time at which each one is done waiting.
+ *
+ * There are 11 levels of 64 slots.  Level 0 has one slot per time unit for
+ * the current block of 64 time units; each slot of level L covers 64^L time
+ * units.  A SimThread is placed on the lowest level whose slots still tell
+ * its wake-up time apart from the current time, and is moved down a level
+ * ("cascaded") when the current time reaches the start of its slot.  Adding a
+ * SimThread is constant time, and advancing the clock only touches the slots
+ * that are due, so a tick in which nobody wakes up costs nothing no matter how
+ * many SimThreads are Blocked.  A bitmap of the non-empty slots on each level
+ * makes finding the next possible event cheap, so the SimEngine can skip over
+ * quiet stretches of time.
+ *
+ * The SimThreads in a slot are chained through their own nextTimer field, so
+ * the wheel never allocates after it is built.
+ */
+public class TimerWheel {
+
+    private static final int LEVELS = 11;      // 11 levels of 6 bits cover every positive long.
+
+    private SimThread[][] head;     // First SimThread in each slot.
+    private SimThread[][] tail;     // Last SimThread in each slot.
+    private long[] occupied;        // Bit s of level L is set if slot s of level L is not empty.
+    private long now;               // Current time; every SimThread due by now has been returned.
+    private int size;               // Number of SimThreads in the wheel.
+
+    /**
+     * Constructor.
+     */
+    public TimerWheel()
+    {
+        head = new SimThread[LEVELS][64];
+        tail = new SimThread[LEVELS][64];
+        occupied = new long[LEVELS];
+        now = 0;
+        size = 0;
+    }
+
+    /**
+     * @return Number of SimThreads in the wheel.
+     */
+    public int size() { return size; }
+
+    /**
+     * @return true if the wheel is empty.
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * Adds a Blocked SimThread to the wheel.
+     * @param st The SimThread.
+     * @param tick Time at which the SimThread is done waiting (moved to the next
+     *             time unit if it is not in the future).
+     */
+    public void add(SimThread st, long tick)
+    {
+        st.wakeTick = Math.max(tick, now + 1);
+        insert(st);
+        size++;
+    }
+
+    /**
+     * Returns the earliest time at which advance() may have something to do:
+     * either the exact time the next SimThread is due, or the start of the slot
+     * that must be cascaded to find out.
+     * @return Next time worth advancing to, or Long.MAX_VALUE if the wheel is empty.
+     */
+    public long nextTick()
+    {
+        for (int level=0; level<LEVELS; level++) {
+            int shift = 6 * level;
+            int current = (int) (now >>> shift) & 63;
+            long later = current == 63 ? 0 : occupied[level] & (-1L << (current + 1));
+            if (later != 0) {
+                long base = (now >>> shift >>> 6) << shift << 6;
+                return base | ((long) Long.numberOfTrailingZeros(later) << shift);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Advances the wheel's clock and removes the SimThreads that are done waiting
+     * at the new time.  The time must be no later than nextTick().
+     * @param tick The new time.
+     * @return The first SimThread that is due (the rest follow through nextTimer),
+     *         or null if none is.
+     */
+    public SimThread advance(long tick)
+    {
+        now = tick;
+        for (int level=LEVELS-1; level>0; level--) {
+            int slot = (int) (tick >>> (6 * level)) & 63;
+            if ((occupied[level] & (1L << slot)) != 0) {
+                SimThread st = take(level, slot);
+                while (st != null) {
+                    SimThread next = st.nextTimer;
+                    insert(st);
+                    st = next;
+                }
+            }
+        }
+        int slot = (int) tick & 63;
+        if ((occupied[0] & (1L << slot)) == 0) {
+            return null;
+        }
+        SimThread due = take(0, slot);
+        for (SimThread st = due; st != null; st = st.nextTimer) {
+            size--;
+        }
+        return due;
+    }
+
+    /**
+     * Writes the wheel to a snapshot: its time, then each slot's SimThreads in order.
+     * @param out The snapshot being written.
+     */
+    void save(Snapshot out)
+    {
+        out.putLong(now);
+        out.putInt(size);
+        for (int level=0; level<LEVELS; level++) {
+            for (int slot=0; slot<64; slot++) {
+                for (SimThread st = head[level][slot]; st != null; st = st.nextTimer) {
+                    out.putThread(st);
+                    out.putLong(st.wakeTick);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills an empty wheel with the SimThreads written by save.  Each one goes
+     * back in the same slot, in the same order, so they wake up in the same order.
+     * @param in The snapshot being read.
+     */
+    void restore(Snapshot in)
+    {
+        now = in.getLong();
+        size = in.getInt();
+        for (int i=0; i<size; i++) {
+            SimThread st = in.getThread();
+            st.wakeTick = in.getLong();
+            insert(st);
+        }
+    }
+
+    // Places a SimThread on the lowest level that tells its wake-up time apart from now.
+    private void insert(SimThread st)
+    {
+        long diff = st.wakeTick ^ now;
+        int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / 6;
+        int slot = (int) (st.wakeTick >>> (6 * level)) & 63;
+        st.nextTimer = null;
+        if (head[level][slot] == null) {
+            head[level][slot] = st;
+            occupied[level] |= 1L << slot;
+        } else {
+            tail[level][slot].nextTimer = st;
+        }
+        tail[level][slot] = st;
+    }
+
+    // Empties a slot and returns its chain of SimThreads.
+    private SimThread take(int level, int slot)
+    {
+        SimThread first = head[level][slot];
+        head[level][slot] = null;
+        tail[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+        return first;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Reads a binary trace written by TraceWriter.  The trace can be replayed
+ * into any SimListener (such as the GUI), or summarized, without re-running
+ * the simulation.
+ *
+ * Usage: java TraceReader trace-file            (print a summary)
+ *        java TraceReader trace-file -gui [ms]  (replay in a window, ms per time unit)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class TraceReader {
+
+    private static final SimThread.State[] STATES = SimThread.State.values();
+
+    private FileChannel channel;    // The trace file.
+    private ByteBuffer buffer;      // Bytes read but not yet decoded.
+    private boolean eof;            // Has the whole file been read into the buffer?
+    private long tick;              // Fields of the current record.
+    private int id;
+    private SimThread.State from;
+    private SimThread.State to;
+    private int reason;
+    private int core;
+
+    /**
+     * Constructor.  Opens the trace file and checks its header.
+     * @param fileName Name of the trace file.
+     * @throws IOException if the file cannot be read or is not a trace.
+     */
+    public TraceReader(String fileName) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(256 * 1024);
+        buffer.flip();
+        eof = false;
+        tick = 0;
+        fill();
+        for (int i=0; i<TraceWriter.MAGIC.length; i++) {
+            if (!buffer.hasRemaining() || buffer.get() != TraceWriter.MAGIC[i]) {
+                throw new IOException(fileName + " is not a trace file");
+            }
+        }
+        if (!buffer.hasRemaining() || buffer.get() != TraceWriter.VERSION) {
+            throw new IOException(fileName + ": unsupported trace version");
+        }
+    }
+
+    /**
+     * Moves to the next record.
+     * @return false if there are no more records.
+     * @throws IOException if the file cannot be read or ends in the middle of a record.
+     */
+    public boolean next() throws IOException
+    {
+        if (buffer.remaining() < 21) {
+            fill();
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+        }
+        tick += getVarint();
+        id = (int) getVarint();
+        if (!buffer.hasRemaining()) {
+            throw new IOException("Trace ends in the middle of a record");
+        }
+        int b = buffer.get() & 0xFF;
+        from = STATES[b >>> 6];
+        to = STATES[(b >>> 4) & 3];
+        reason = b & 15;
+        core = reason == TraceWriter.DISPATCHED ? (int) getVarint() : -1;
+        return true;
+    }
+
+    /**
+     * @return Time of the current record.
+     */
+    public long tick() { return tick; }
+
+    /**
+     * @return SimThread ID of the current record.
+     */
+    public int id() { return id; }
+
+    /**
+     * @return Old state of the current record.
+     */
+    public SimThread.State from() { return from; }
+
+    /**
+     * @return New state of the current record.
+     */
+    public SimThread.State to() { return to; }
+
+    /**
+     * @return Reason code of the current record (TraceWriter.NEW, ...).
+     */
+    public int reason() { return reason; }
+
+    /**
+     * @return Core the SimThread is dispatched to, for a DISPATCHED record (-1 for others).
+     */
+    public int core() { return core; }
+
+    /**
+     * Closes the trace file.
+     * @throws IOException if the file cannot be closed.
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Replays the rest of the trace into a listener, as the simulation would have
+     * reported it.  Only states and the cores threads are dispatched to are
+     * in the trace, so run time and priority are not shown.
+     * @param listener Told about every state change.
+     * @param msPerTick Real time (in milliseconds) per simulated time unit (0 for as fast as possible).
+     * @throws IOException if the file cannot be read.
+     * @throws InterruptedException if interrupted while pacing the replay.
+     */
+    public void replay(SimListener listener, long msPerTick) throws IOException, InterruptedException
+    {
+        ThreadTable threads = new ThreadTable();
+        long now = tick;
+        while (next()) {
+            if (tick > now) {
+                if (msPerTick > 0) {
+                    Thread.sleep(msPerTick * (tick - now));
+                }
+                now = tick;
+                listener.updateTime(now);
+            }
+            SimThread st = threads.get(id);
+            if (st == null) {
+                st = new SimThread(id, listener, 0, 0, -1, 0);
+                threads.add(st);
+            }
+            if (reason == TraceWriter.DISPATCHED) {
+                st.runOn(core, 0);
+            }
+            st.setState(to, tick);
+            if (to == SimThread.State.DONE) {
+                threads.remove(st);
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of the trace and prints a summary of it.
+     * @throws IOException if the file cannot be read.
+     */
+    public void summarize() throws IOException
+    {
+        long[] reasons = new long[16];
+        long records = 0;
+        long threads = 0;
+        long done = 0;
+        long turnaround = 0;
+        long waiting = 0;
+        long response = 0;
+        long responded = 0;
+        long[] since = new long[16];    // Per ID: time of arrival, then time of last entering Queued
+        long[] arrival = new long[16];
+        boolean[] started = new boolean[16];
+        while (next()) {
+            records++;
+            reasons[reason]++;
+            if (id >= since.length) {
+                int n = Math.max(id + 1, since.length * 2);
+                since = java.util.Arrays.copyOf(since, n);
+                arrival = java.util.Arrays.copyOf(arrival, n);
+                started = java.util.Arrays.copyOf(started, n);
+            }
+            if (reason == TraceWriter.NEW) {
+                threads++;
+                arrival[id] = tick;
+            }
+            if (from == SimThread.State.QUEUED && to != SimThread.State.QUEUED) {
+                waiting += tick - since[id];
+            }
+            if (to == SimThread.State.QUEUED) {
+                since[id] = tick;
+            }
+            if (to == SimThread.State.RUNNING && !started[id]) {
+                started[id] = true;
+                response += tick - arrival[id];
+                responded++;
+            }
+            if (to == SimThread.State.DONE) {
+                done++;
+                turnaround += tick - arrival[id];
+            }
+        }
+        System.out.println("Records:           " + records);
+        System.out.println("Last time:         " + tick);
+        System.out.println("Threads:           " + threads + " (" + done + " done)");
+        System.out.println("Dispatches:        " + reasons[TraceWriter.DISPATCHED]);
+        System.out.println("Quantum expiries:  " + reasons[TraceWriter.QUANTUM]);
+        System.out.println("Preemptions:       " + reasons[TraceWriter.PREEMPTED]);
+        System.out.println("Blocks:            " + reasons[TraceWriter.BLOCKED]);
+        if (done > 0) {
+            System.out.println("Avg turnaround:    " + (double) turnaround / done);
+        }
+        if (threads > 0) {
+            System.out.println("Avg waiting time:  " + (double) waiting / threads);
+        }
+        if (responded > 0) {
+            System.out.println("Avg response time: " + (double) response / responded);
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java TraceReader trace-file [-gui [ms per time unit]]");
+            System.exit(1);
+        }
+        TraceReader reader = new TraceReader(args[0]);
+        if (args.length > 1 && args[1].equals("-gui")) {
+            long ms = args.length > 2 ? Long.parseLong(args[2]) : 250;
+            reader.replay(new GUI(null), ms);
+        } else {
+            reader.summarize();
+        }
+        reader.close();
+    }
+
+    // Reads more of the file into the buffer.
+    private void fill() throws IOException
+    {
+        if (eof) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                eof = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private long getVarint() throws IOException
+    {
+        long v = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Trace ends in the middle of a record");
+            }
+            byte b = buffer.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new IOException("Bad varint in trace");
+    }
+}
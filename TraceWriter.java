@@ -0,0 +1,139 @@
+/**
+ * Writes a compact binary trace of every SimThread state change, which
+ * TraceReader can replay later without re-running the simulation.
+ *
+ * The file starts with the 4 bytes "THTR" and a version byte.  Each state
+ * change is then one record:
+ *   - time since the previous record (unsigned varint),
+ *   - SimThread ID (unsigned varint),
+ *   - one byte holding the old state (bits 6-7), the new state (bits 4-5)
+ *     and the reason for the change (bits 0-3),
+ *   - for a DISPATCHED record only, the core (unsigned varint).
+ * States are numbered in SimThread.State order.  A record is usually 3 to 5
+ * bytes.  Records are collected in a buffer and written to a FileChannel
+ * whenever the buffer fills up.  A shutdown hook closes a trace that is
+ * still open when the program exits; close() removes it again.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class TraceWriter {
+
+    public static final byte[] MAGIC = {'T', 'H', 'T', 'R'};
+    public static final int VERSION = 2;
+
+    // Reasons for a state change.  0-3 are the Scheduler.enqueue codes.
+    public static final int NEW = 0;            // New thread enters the Queued state.
+    public static final int UNBLOCKED = 1;      // Thread returns from the Blocked state.
+    public static final int QUANTUM = 2;        // Thread has exceeded its time quantum.
+    public static final int PREEMPTED = 3;      // Thread has been preempted for a higher priority thread.
+    public static final int DISPATCHED = 4;     // Thread is scheduled to run.
+    public static final int BLOCKED = 5;        // Thread reached the end of its CPU burst and waits.
+    public static final int EXITED = 6;         // Thread has completed all of its cycles.
+
+    private FileChannel channel;    // The trace file.
+    private ByteBuffer buffer;      // Records not yet written.
+    private long lastTick;          // Time of the previous record.
+    private boolean closed;
+    private Thread hook;            // Closes the trace when the program exits.
+
+    /**
+     * Constructor.  Creates (or empties) the trace file and writes its header.
+     * @param fileName Name of the trace file.
+     * @throws IOException if the file cannot be created.
+     */
+    public TraceWriter(String fileName) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(256 * 1024);
+        buffer.put(MAGIC);
+        buffer.put((byte) VERSION);
+        lastTick = 0;
+        closed = false;
+        hook = new Thread() {
+            public void run() {
+                try {
+                    TraceWriter.this.close();
+                } catch (IOException e) {
+                    // The program is exiting; there is nobody left to tell.
+                }
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    /**
+     * Adds a state change to the trace.
+     * @param tick Time of the change.
+     * @param id SimThread's ID.
+     * @param from Old state.
+     * @param to New state.
+     * @param reason Why the state changed (NEW, UNBLOCKED, ...).
+     * @param core Core the SimThread is dispatched to (only written for DISPATCHED).
+     * @throws IOException if the trace cannot be written.
+     */
+    public synchronized void record(long tick, int id, SimThread.State from, SimThread.State to, int reason,
+        int core) throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        if (buffer.remaining() < 21) {
+            drain();
+        }
+        putVarint(tick - lastTick);
+        putVarint(id & 0xFFFFFFFFL);
+        buffer.put((byte) (from.ordinal() << 6 | to.ordinal() << 4 | reason));
+        if (reason == DISPATCHED) {
+            putVarint(core & 0xFFFFFFFFL);
+        }
+        lastTick = tick;
+    }
+
+    /**
+     * Writes any buffered records and closes the trace file.
+     * @throws IOException if the trace cannot be written.
+     */
+    public synchronized void close() throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            drain();
+        } finally {
+            channel.close();
+            if (Thread.currentThread() != hook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(hook);
+                } catch (IllegalStateException e) {
+                    // The program is exiting already; the hook will find the trace closed.
+                }
+            }
+        }
+    }
+
+    private void putVarint(long v)
+    {
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
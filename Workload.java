@@ -0,0 +1,275 @@
+/**
+ * Reads a workload trace: the SimThreads to create, when each one arrives,
+ * and the CPU burst and wait time of each of its cycles.  The trace is read
+ * one SimThread at a time as the simulation reaches its arrival time (see
+ * OS.setWorkload), so a trace of any size can be replayed without holding it
+ * in memory.  A Workload is one of the simulation's ArrivalSources.
+ *
+ * A trace is either text or binary.  A text trace has one SimThread per line:
+ *   arrival,priority,burst,wait,burst,wait,...,burst
+ * that is, the arrival time, the priority, then the CPU burst of each cycle
+ * with the wait time between it and the next one.  Blank lines and lines
+ * starting with # are skipped.  A binary trace starts with the 4 bytes "THWL"
+ * and a version byte, then has one record per SimThread of unsigned varints:
+ * the time since the previous arrival, the priority, the number of cycles,
+ * and the bursts and waits in the same order as the text.  Either way, the
+ * SimThreads must be in order of arrival.
+ *
+ * Usage: java Workload trace.csv trace.bin   (convert a text trace to binary)
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class Workload implements ArrivalSource {
+
+    public static final byte[] MAGIC = {'T', 'H', 'W', 'L'};
+    public static final int VERSION = 1;
+
+    private String fileName;        // Name of the trace file (for error messages).
+    private InputStream in;         // The trace file.
+    private BufferedReader text;    // The trace, if text (null if binary).
+    private int line;               // Line number of the current record (text only).
+    private long arrival;           // Fields of the current record.
+    private int priority;
+    private int[] bursts;
+    private int[] waits;
+    private boolean current;        // Has a record been read that hasn't arrived yet?
+
+    /**
+     * Constructor.  Opens the trace file; call next() to read its first SimThread.
+     * @param fileName Name of the trace file.
+     * @throws IOException if the file cannot be read.
+     */
+    public Workload(String fileName) throws IOException
+    {
+        this.fileName = fileName;
+        in = new BufferedInputStream(new FileInputStream(fileName), 64 * 1024);
+        in.mark(MAGIC.length + 1);
+        boolean binary = true;
+        for (int i=0; i<MAGIC.length; i++) {
+            if (in.read() != MAGIC[i]) {
+                binary = false;
+            }
+        }
+        if (!binary) {
+            in.reset();
+            text = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } else if (in.read() != VERSION) {
+            throw new IOException(fileName + ": unsupported workload version");
+        }
+        line = 0;
+        arrival = 0;
+        current = false;
+    }
+
+    /**
+     * Moves to the next SimThread in the trace.
+     * @return false if there are no more.
+     * @throws IOException if the file cannot be read or is not a valid trace.
+     */
+    public boolean next() throws IOException
+    {
+        current = text == null ? nextBinary() : nextText();
+        return current;
+    }
+
+    public long nextArrival()
+    {
+        return current ? arrival : Long.MAX_VALUE;
+    }
+
+    /**
+     * Creates the current SimThread and reads the next one (closing the
+     * trace at its end).
+     */
+    public void arrive(OS os) throws IOException
+    {
+        os.createSimThread(bursts, waits, priority);
+        if (!next()) {
+            close();
+        }
+    }
+
+    /**
+     * @return Arrival time of the current SimThread.
+     */
+    public long arrival() { return arrival; }
+
+    /**
+     * @return Priority of the current SimThread.
+     */
+    public int priority() { return priority; }
+
+    /**
+     * @return CPU burst of each cycle of the current SimThread.
+     */
+    public int[] bursts() { return bursts; }
+
+    /**
+     * @return Wait time after each CPU burst but the last of the current SimThread.
+     */
+    public int[] waits() { return waits; }
+
+    /**
+     * Closes the trace file.
+     * @throws IOException if the file cannot be closed.
+     */
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    private boolean nextText() throws IOException
+    {
+        String s;
+        do {
+            s = text.readLine();
+            line++;
+            if (s == null) {
+                return false;
+            }
+            s = s.trim();
+        } while (s.isEmpty() || s.startsWith("#"));
+        String[] fields = s.split(",");
+        if (fields.length < 3 || fields.length % 2 == 0) {
+            throw error("expected arrival,priority,burst[,wait,burst]...");
+        }
+        try {
+            long a = Long.parseLong(fields[0].trim());
+            if (a < arrival) {
+                throw error("arrivals out of order");
+            }
+            arrival = a;
+            priority = Integer.parseInt(fields[1].trim());
+            int cycles = (fields.length - 1) / 2;
+            bursts = new int[cycles];
+            waits = new int[cycles - 1];
+            for (int i=0; i<cycles; i++) {
+                bursts[i] = Integer.parseInt(fields[2 + 2*i].trim());
+                if (i < cycles - 1) {
+                    waits[i] = Integer.parseInt(fields[3 + 2*i].trim());
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw error("not a number: " + e.getMessage());
+        }
+        check();
+        return true;
+    }
+
+    private boolean nextBinary() throws IOException
+    {
+        int b = in.read();
+        if (b < 0) {
+            return false;
+        }
+        arrival += getVarint(b);
+        priority = (int) getVarint(in.read());
+        int cycles = (int) getVarint(in.read());
+        if (cycles < 1) {
+            throw error("SimThread with no cycles");
+        }
+        bursts = new int[cycles];
+        waits = new int[cycles - 1];
+        for (int i=0; i<cycles; i++) {
+            bursts[i] = (int) getVarint(in.read());
+            if (i < cycles - 1) {
+                waits[i] = (int) getVarint(in.read());
+            }
+        }
+        check();
+        return true;
+    }
+
+    // Bursts must be at least 1 time unit, waits can be 0.
+    private void check() throws IOException
+    {
+        if (priority < 0) {
+            throw error("bad priority");
+        }
+        for (int i=0; i<bursts.length; i++) {
+            if (bursts[i] < 1 || (i < waits.length && waits[i] < 0)) {
+                throw error("bad burst or wait time");
+            }
+        }
+    }
+
+    private IOException error(String msg)
+    {
+        return new IOException(fileName + (text == null ? "" : ", line " + line) + ": " + msg);
+    }
+
+    // Reads an unsigned varint whose first byte has been read already.
+    private long getVarint(int b) throws IOException
+    {
+        long v = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            if (b < 0) {
+                throw error("trace ends in the middle of a record");
+            }
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+            b = in.read();
+        }
+        throw error("bad varint");
+    }
+
+    /**
+     * Converts a trace (text or binary) to a binary trace.
+     * @param from Name of the trace file to read.
+     * @param to Name of the binary trace file to write.
+     * @throws IOException if either file cannot be read or written.
+     */
+    public static void toBinary(String from, String to) throws IOException
+    {
+        Workload w = new Workload(from);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(to), 64 * 1024)) {
+            out.write(MAGIC);
+            out.write(VERSION);
+            long last = 0;
+            while (w.next()) {
+                putVarint(out, w.arrival - last);
+                putVarint(out, w.priority);
+                putVarint(out, w.bursts.length);
+                for (int i=0; i<w.bursts.length; i++) {
+                    putVarint(out, w.bursts[i]);
+                    if (i < w.waits.length) {
+                        putVarint(out, w.waits[i]);
+                    }
+                }
+                last = w.arrival;
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    private static void putVarint(OutputStream out, long v) throws IOException
+    {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2) {
+            System.err.println("Usage: java Workload trace.csv trace.bin");
+            System.exit(1);
+        }
+        toBinary(args[0], args[1]);
+    }
+}